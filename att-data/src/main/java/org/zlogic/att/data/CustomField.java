@@ -10,6 +10,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 
 /**
  * Entity class for a custom field. Each task's time is tracked with
@@ -25,7 +26,8 @@ public class CustomField implements Serializable, Comparable<CustomField> {
 	 * JPA ID
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE)
+	@SequenceGenerator(name = "CustomFieldSequence", sequenceName = "hibernate_sequence", allocationSize = PersistenceHelper.ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "CustomFieldSequence")
 	private long id;
 	/**
 	 * Custom field name
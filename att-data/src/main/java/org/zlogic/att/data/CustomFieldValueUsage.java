@@ -0,0 +1,69 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data;
+
+/**
+ * Read-only entry of the custom field value dictionary: a distinct custom
+ * field value and the number of tasks using it.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueUsage {
+
+	/**
+	 * The custom field
+	 */
+	private final CustomField customField;
+	/**
+	 * The custom field value
+	 */
+	private final String value;
+	/**
+	 * Number of tasks using this value
+	 */
+	private final long usageCount;
+
+	/**
+	 * Constructs a CustomFieldValueUsage
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value
+	 * @param usageCount number of tasks using this value
+	 */
+	protected CustomFieldValueUsage(CustomField customField, String value, long usageCount) {
+		this.customField = customField;
+		this.value = value;
+		this.usageCount = usageCount;
+	}
+
+	/**
+	 * Returns the custom field
+	 *
+	 * @return the custom field
+	 */
+	public CustomField getCustomField() {
+		return customField;
+	}
+
+	/**
+	 * Returns the custom field value
+	 *
+	 * @return the custom field value
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the number of tasks using this value
+	 *
+	 * @return the number of tasks using this value
+	 */
+	public long getUsageCount() {
+		return usageCount;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Record of a deleted task, used to find tasks deleted since a change number
+ * without comparing the IDs of all tasks. Records are removed when the
+ * database is opened, since nobody has loaded any tasks at that time.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+@Entity
+@Table(indexes = {
+	@Index(name = "DeletedTask_changeNumber", columnList = "changeNumber")})
+public class DeletedTask implements Serializable {
+
+	/**
+	 * Version UID
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * ID of the deleted task
+	 */
+	@Id
+	private long id;
+	/**
+	 * The change number assigned by the database when the task was deleted
+	 * (null until the deleting transaction is committed)
+	 */
+	private Long changeNumber;
+
+	/**
+	 * Default constructor
+	 */
+	protected DeletedTask() {
+	}
+
+	/**
+	 * Creates a record of a deleted task
+	 *
+	 * @param id ID of the deleted task
+	 */
+	protected DeletedTask(long id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns ID of the deleted task
+	 *
+	 * @return ID of the deleted task
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the change number of the deleting transaction
+	 *
+	 * @return the change number of the deleting transaction
+	 */
+	public Long getChangeNumber() {
+		return changeNumber;
+	}
+}
@@ -10,6 +10,8 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
@@ -27,7 +29,8 @@ public abstract class Filter implements Serializable {
 	 * JPA ID
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE)
+	@SequenceGenerator(name = "FilterSequence", sequenceName = "hibernate_sequence", allocationSize = PersistenceHelper.ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "FilterSequence")
 	private Long id;
 
 	/**
@@ -41,11 +44,22 @@ public abstract class Filter implements Serializable {
 
 	/**
 	 * Returns the predicate which can be used for applying this filter to a
-	 * task query
+	 * task query. The predicate doesn't join other tables to the task root, so
+	 * it never duplicates tasks.
 	 *
 	 * @param criteriaBuilder the query CriteriaBuilder
+	 * @param query the query which will use the predicate (used to create
+	 * subqueries)
 	 * @param taskRoot the task root (CriteriaQuery<Task>.from())
 	 * @return the predicate
 	 */
-	public abstract Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, Root<Task> taskRoot);
+	public abstract Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot);
+
+	/**
+	 * Returns the predicate which can be used for applying this filter to task
+	 * summaries in memory, without querying the database
+	 *
+	 * @return the predicate
+	 */
+	public abstract java.util.function.Predicate<TaskSummary> getTaskPredicate();
 }
@@ -8,10 +8,12 @@ package org.zlogic.att.data;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.MapJoin;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 
 /**
  * Tasks filter which filters the custom field value.
@@ -75,13 +77,45 @@ public class FilterCustomField extends Filter {
 	}
 
 	@Override
-	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, Root<Task> taskRoot) {
-		if (customFieldValue == null || customFieldValue.isEmpty())
-			return criteriaBuilder.conjunction();//This will be dealt with later
-		MapJoin<Task, CustomField, String> customFieldJoin = taskRoot.join(Task_.customFields);
-		return customFieldJoin.on(criteriaBuilder.and(
-				criteriaBuilder.equal(customFieldJoin.key(), customField),
-				criteriaBuilder.equal(customFieldJoin.value(), customFieldValue)))
-				.getOn();
+	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot) {
+		Subquery<String> customFieldSubquery = query.subquery(String.class);
+		Root<Task> customFieldTaskRoot = customFieldSubquery.correlate(taskRoot);
+		MapJoin<Task, CustomField, String> customFieldJoin = customFieldTaskRoot.join(Task_.customFields);
+		customFieldSubquery.select(customFieldJoin.value());
+		Predicate customFieldPredicate = criteriaBuilder.equal(customFieldJoin.key(), customField);
+		if (customFieldValue == null || customFieldValue.isEmpty()) {
+			//Task has no value for this custom field, or the value is empty
+			customFieldSubquery.where(criteriaBuilder.and(
+					customFieldPredicate,
+					criteriaBuilder.isNotNull(customFieldJoin.value()),
+					criteriaBuilder.notEqual(customFieldJoin.value(), ""))); //NOI18N
+			return criteriaBuilder.not(criteriaBuilder.exists(customFieldSubquery));
+		}
+		customFieldSubquery.where(criteriaBuilder.and(
+				customFieldPredicate,
+				criteriaBuilder.equal(customFieldJoin.value(), customFieldValue)));
+		return criteriaBuilder.exists(customFieldSubquery);
+	}
+
+	@Override
+	public java.util.function.Predicate<TaskSummary> getTaskPredicate() {
+		return new java.util.function.Predicate<TaskSummary>() {
+			private CustomField customField;
+			private String customFieldValue;
+
+			public java.util.function.Predicate<TaskSummary> setParameters(CustomField customField, String customFieldValue) {
+				this.customField = customField;
+				this.customFieldValue = customFieldValue;
+				return this;
+			}
+
+			@Override
+			public boolean test(TaskSummary summary) {
+				String taskCustomFieldValue = customField != null ? summary.getCustomField(customField) : null;
+				if (customFieldValue == null || customFieldValue.isEmpty())
+					return taskCustomFieldValue == null || taskCustomFieldValue.isEmpty();
+				return customFieldValue.equals(taskCustomFieldValue);
+			}
+		}.setParameters(customField, customFieldValue);
 	}
 }
@@ -13,10 +13,11 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Temporal;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
-import javax.persistence.criteria.SetJoin;
+import javax.persistence.criteria.Subquery;
 
 /**
  * Tasks filter which filters the task date.
@@ -108,21 +109,52 @@ public class FilterDate extends Filter {
 	}
 
 	@Override
-	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, Root<Task> taskRoot) {
+	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot) {
+		//A segment's start time is never after its end time, so only one of them needs to be checked
 		if (type == DateType.DATE_AFTER) {
-			SetJoin<Task, TimeSegment> timeSegmentsJoin = taskRoot.join(Task_.timeSegments);
-
-			return criteriaBuilder.or(
-					criteriaBuilder.greaterThanOrEqualTo(timeSegmentsJoin.get(TimeSegment_.endTime), appliedDate),
-					criteriaBuilder.greaterThanOrEqualTo(timeSegmentsJoin.get(TimeSegment_.startTime), appliedDate));
+			Subquery<TimeSegment> timeSegmentsSubquery = query.subquery(TimeSegment.class);
+			Root<TimeSegment> timeSegmentRoot = timeSegmentsSubquery.from(TimeSegment.class);
+			timeSegmentsSubquery.select(timeSegmentRoot).where(criteriaBuilder.and(
+					criteriaBuilder.equal(timeSegmentRoot.get(TimeSegment_.owner), taskRoot),
+					criteriaBuilder.greaterThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.endTime), appliedDate)));
+			return criteriaBuilder.exists(timeSegmentsSubquery);
 		} else if (type == DateType.DATE_BEFORE) {
-			SetJoin<Task, TimeSegment> timeSegmentsJoin = taskRoot.join(Task_.timeSegments);
-
-			return criteriaBuilder.or(
-					criteriaBuilder.lessThanOrEqualTo(timeSegmentsJoin.get(TimeSegment_.endTime), appliedDate),
-					criteriaBuilder.lessThanOrEqualTo(timeSegmentsJoin.get(TimeSegment_.startTime), appliedDate));
+			Subquery<TimeSegment> timeSegmentsSubquery = query.subquery(TimeSegment.class);
+			Root<TimeSegment> timeSegmentRoot = timeSegmentsSubquery.from(TimeSegment.class);
+			timeSegmentsSubquery.select(timeSegmentRoot).where(criteriaBuilder.and(
+					criteriaBuilder.equal(timeSegmentRoot.get(TimeSegment_.owner), taskRoot),
+					criteriaBuilder.lessThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.startTime), appliedDate)));
+			return criteriaBuilder.exists(timeSegmentsSubquery);
 		}
 		log.log(Level.SEVERE, messages.getString("UNKNOWN_DATE_TYPE"), type.toString());
 		return criteriaBuilder.conjunction();
 	}
+
+	@Override
+	public java.util.function.Predicate<TaskSummary> getTaskPredicate() {
+		if (type != DateType.DATE_AFTER && type != DateType.DATE_BEFORE)
+			log.log(Level.SEVERE, messages.getString("UNKNOWN_DATE_TYPE"), type.toString());
+		//A segment ending or starting after (before) the date exists if the last (first) time is after (before) the date
+		return new java.util.function.Predicate<TaskSummary>() {
+			private DateType type;
+			private Date appliedDate;
+
+			public java.util.function.Predicate<TaskSummary> setParameters(DateType type, Date appliedDate) {
+				this.type = type;
+				this.appliedDate = appliedDate;
+				return this;
+			}
+
+			@Override
+			public boolean test(TaskSummary summary) {
+				if (appliedDate == null)
+					return false;
+				if (type == DateType.DATE_AFTER)
+					return summary.getLastTime() != null && summary.getLastTime().getTime() >= appliedDate.getTime();
+				else if (type == DateType.DATE_BEFORE)
+					return summary.getFirstTime() != null && summary.getFirstTime().getTime() <= appliedDate.getTime();
+				return true;
+			}
+		}.setParameters(type, appliedDate);
+	}
 }
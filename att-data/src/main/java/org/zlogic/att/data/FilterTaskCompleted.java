@@ -6,6 +6,7 @@
 package org.zlogic.att.data;
 
 import javax.persistence.Entity;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
@@ -50,7 +51,29 @@ public class FilterTaskCompleted extends Filter {
 	}
 
 	@Override
-	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, Root<Task> taskRoot) {
-		return criteriaBuilder.equal(taskRoot.get(Task_.completed), taskCompleted);
+	public Predicate getFilterPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot) {
+		if (taskCompleted == null)
+			return criteriaBuilder.disjunction();
+		//A null completed state means the task is not completed, same as in getTaskPredicate
+		if (taskCompleted)
+			return criteriaBuilder.isTrue(taskRoot.get(Task_.completed));
+		return criteriaBuilder.or(criteriaBuilder.isNull(taskRoot.get(Task_.completed)), criteriaBuilder.isFalse(taskRoot.get(Task_.completed)));
+	}
+
+	@Override
+	public java.util.function.Predicate<TaskSummary> getTaskPredicate() {
+		return new java.util.function.Predicate<TaskSummary>() {
+			private Boolean taskCompleted;
+
+			public java.util.function.Predicate<TaskSummary> setTaskCompleted(Boolean taskCompleted) {
+				this.taskCompleted = taskCompleted;
+				return this;
+			}
+
+			@Override
+			public boolean test(TaskSummary summary) {
+				return taskCompleted != null && taskCompleted == summary.getCompleted();
+			}
+		}.setTaskCompleted(taskCompleted);
 	}
 }
@@ -5,6 +5,11 @@
  */
 package org.zlogic.att.data;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -12,17 +17,33 @@ import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import javax.persistence.Tuple;
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.MapJoin;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.zlogic.att.data.converters.Importer;
 
 /**
@@ -34,6 +55,11 @@ import org.zlogic.att.data.converters.Importer;
  */
 public class PersistenceHelper {
 
+	/**
+	 * Number of IDs allocated from the database sequence in a single call
+	 * (used by the pooled ID optimizer of all entities)
+	 */
+	public static final int ID_ALLOCATION_SIZE = 50;
 	/**
 	 * The logger
 	 */
@@ -47,25 +73,186 @@ public class PersistenceHelper {
 	 */
 	private EntityManagerFactory entityManagerFactory = null;
 	/**
-	 * True if shutdown is started. Disables any transactions.
+	 * True if shutdown is started. Disables any transactions. Volatile since
+	 * it's also read without holding shuttingDownLock.
 	 */
-	private boolean shuttingDown = false;
+	private volatile boolean shuttingDown = false;
 	/**
 	 * Lock for shuttingDown
 	 */
 	private ReentrantReadWriteLock shuttingDownLock = new ReentrantReadWriteLock();
+	/**
+	 * Maximum number of values in a single IN (...) list; longer lists are
+	 * split into several queries
+	 */
+	private static final int MAX_IN_LIST_SIZE = 500;
+	/**
+	 * Maximum number of queued changes which will be committed in a single
+	 * transaction
+	 */
+	private static final int MAX_GROUP_COMMIT_SIZE = 256;
+	/**
+	 * Queue of changes waiting to be performed by the writer thread
+	 */
+	private final BlockingQueue<QueuedChange> writerQueue = new LinkedBlockingQueue<>();
+	/**
+	 * Marker which stops the writer thread
+	 */
+	private final QueuedChange writerStopMarker = new QueuedChange(null);
+	/**
+	 * The writer thread (started on first asynchronous change)
+	 */
+	private Thread writerThread;
+	/**
+	 * True if the writer thread is stopping and doesn't accept any new changes
+	 */
+	private boolean writerStopping = false;
+	/**
+	 * True if the writer thread has exited (e.g. was interrupted) and no more
+	 * changes will be performed
+	 */
+	private boolean writerStopped = false;
+	/**
+	 * The result of the last change queued for the writer thread
+	 */
+	private CompletableFuture<Void> lastQueuedChange = CompletableFuture.completedFuture(null);
+	/**
+	 * Lock for writerThread, writerStopping, writerStopped and lastQueuedChange
+	 */
+	private final Object writerLock = new Object();
+	/**
+	 * The data version, incremented after every committed transaction
+	 */
+	private final AtomicLong dataVersion = new AtomicLong();
+	/**
+	 * Lock held while a transaction's change number is assigned and the
+	 * transaction is committed, so that no uncommitted changes have a change
+	 * number below the one returned by getChangeNumber
+	 */
+	private final ReentrantLock changeNumberLock = new ReentrantLock();
+
+	/**
+	 * Class to store a change queued for the writer thread and its result
+	 */
+	private static class QueuedChange {
+
+		/**
+		 * The change to perform
+		 */
+		private final TransactedChange change;
+		/**
+		 * The result, completed after the change's transaction is committed
+		 */
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		/**
+		 * Constructs a QueuedChange
+		 *
+		 * @param change the change to perform
+		 */
+		private QueuedChange(TransactedChange change) {
+			this.change = change;
+		}
+	}
 
 	/**
 	 * Default constructor
 	 */
 	public PersistenceHelper() {
-		entityManagerFactory = Persistence.createEntityManagerFactory("AwesomeTimeTrackerPersistenceUnit"); //NOI18N
+		this(new TreeMap<String, String>());
+	}
+
+	/**
+	 * Constructs a PersistenceHelper with persistence unit properties
+	 * overriding the defaults (e.g. javax.persistence.jdbc.url to use a
+	 * different database)
+	 *
+	 * @param properties the persistence unit properties to override
+	 */
+	public PersistenceHelper(Map<String, String> properties) {
+		entityManagerFactory = Persistence.createEntityManagerFactory("AwesomeTimeTrackerPersistenceUnit", properties); //NOI18N
+		updateSequenceIncrement();
+		createChangeSequence();
+	}
+
+	/**
+	 * Sets the ID sequence increment to ID_ALLOCATION_SIZE. Databases created
+	 * by earlier versions use an increment of 1; the sequence is restarted
+	 * after its next value so that IDs allocated by the pooled optimizer don't
+	 * overlap existing IDs. Should be called before any entities are
+	 * persisted.
+	 */
+	private void updateSequenceIncrement() {
+		EntityManager entityManager = null;
+		try {
+			entityManager = entityManagerFactory.createEntityManager();
+			entityManager.getTransaction().begin();
+			List<?> increment = entityManager.createNativeQuery("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME='HIBERNATE_SEQUENCE'").getResultList(); //NOI18N
+			if (!increment.isEmpty() && ((Number) increment.get(0)).longValue() != ID_ALLOCATION_SIZE) {
+				long nextValue = ((Number) entityManager.createNativeQuery("SELECT NEXT VALUE FOR hibernate_sequence").getSingleResult()).longValue(); //NOI18N
+				log.log(Level.INFO, messages.getString("UPDATING_ID_SEQUENCE_INCREMENT"), ID_ALLOCATION_SIZE);
+				entityManager.createNativeQuery("ALTER SEQUENCE hibernate_sequence RESTART WITH " + (nextValue + ID_ALLOCATION_SIZE) + " INCREMENT BY " + ID_ALLOCATION_SIZE).executeUpdate(); //NOI18N
+			}
+			entityManager.getTransaction().commit();
+		} finally {
+			closeEntityManager(entityManager);
+		}
+	}
+
+	/**
+	 * Creates the change number sequence if it doesn't exist, and assigns a
+	 * change number to rows which don't have one (rows created by earlier
+	 * versions). Removes records of deleted tasks, since no tasks were loaded
+	 * yet. Should be called before any entities are persisted.
+	 */
+	private void createChangeSequence() {
+		EntityManager entityManager = null;
+		try {
+			entityManager = entityManagerFactory.createEntityManager();
+			entityManager.getTransaction().begin();
+			entityManager.createNativeQuery("CREATE SEQUENCE IF NOT EXISTS change_sequence").executeUpdate(); //NOI18N
+			CriteriaDelete<DeletedTask> deletedTasksCriteriaDelete = entityManager.getCriteriaBuilder().createCriteriaDelete(DeletedTask.class);
+			deletedTasksCriteriaDelete.from(DeletedTask.class);
+			entityManager.createQuery(deletedTasksCriteriaDelete).executeUpdate();
+			assignChangeNumber(entityManager);
+			entityManager.getTransaction().commit();
+		} finally {
+			closeEntityManager(entityManager);
+		}
+	}
+
+	/**
+	 * Assigns the next change number from the database sequence to all tasks
+	 * which were modified or deleted in an EntityManager's transaction.
+	 * Modified tasks have their change number reset to null by JPA callbacks,
+	 * or when their time segments are modified; deleted tasks are recorded by
+	 * deleteTask. Should be called after the EntityManager is flushed.
+	 *
+	 * @param entityManager EntityManager with the transaction which modified
+	 * the entities
+	 */
+	private void assignChangeNumber(EntityManager entityManager) {
+		long changeNumber = ((Number) entityManager.createNativeQuery("SELECT NEXT VALUE FOR change_sequence").getSingleResult()).longValue(); //NOI18N
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<Task> taskCriteriaUpdate = criteriaBuilder.createCriteriaUpdate(Task.class);
+		Root<Task> taskRoot = taskCriteriaUpdate.from(Task.class);
+		taskCriteriaUpdate.set(taskRoot.get(Task_.changeNumber), changeNumber)
+				.where(criteriaBuilder.isNull(taskRoot.get(Task_.changeNumber)));
+		entityManager.createQuery(taskCriteriaUpdate).executeUpdate();
+		CriteriaUpdate<DeletedTask> deletedTaskCriteriaUpdate = criteriaBuilder.createCriteriaUpdate(DeletedTask.class);
+		Root<DeletedTask> deletedTaskRoot = deletedTaskCriteriaUpdate.from(DeletedTask.class);
+		deletedTaskCriteriaUpdate.set(deletedTaskRoot.get(DeletedTask_.changeNumber), changeNumber)
+				.where(criteriaBuilder.isNull(deletedTaskRoot.get(DeletedTask_.changeNumber)));
+		entityManager.createQuery(deletedTaskCriteriaUpdate).executeUpdate();
 	}
 
 	/**
 	 * Starts the shutdown and blocks any future requests to the database.
+	 * Changes which were already queued for the writer thread are committed
+	 * before the database is closed.
 	 */
 	public void shutdown() {
+		stopWriterThread();
 		try {
 			shuttingDownLock.writeLock().lock();
 			shuttingDown = true;
@@ -75,6 +262,64 @@ public class PersistenceHelper {
 		}
 	}
 
+	/**
+	 * Returns the data version. The version is incremented after every
+	 * committed transaction, so anything computed from the database stays
+	 * valid while the version doesn't change.
+	 *
+	 * @return the data version
+	 */
+	public long getDataVersion() {
+		return dataVersion.get();
+	}
+
+	/**
+	 * Returns the change number of the last committed change to tasks (or their
+	 * time segments). Changes committed later will have a greater change number, and
+	 * all changes with a change number up to the returned one are already
+	 * committed.
+	 *
+	 * @return the change number of the last committed change
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public long getChangeNumber() throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+			try {
+				changeNumberLock.lock();
+				return ((Number) entityManager.createNativeQuery("SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME='CHANGE_SEQUENCE'").getSingleResult()).longValue(); //NOI18N
+			} finally {
+				changeNumberLock.unlock();
+			}
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Assigns a change number to the modified entities, commits an
+	 * EntityManager's transaction and increments the data version
+	 *
+	 * @param entityManager EntityManager with the transaction to commit
+	 */
+	private void commitTransaction(EntityManager entityManager) {
+		entityManager.flush();
+		try {
+			changeNumberLock.lock();
+			assignChangeNumber(entityManager);
+			entityManager.getTransaction().commit();
+		} finally {
+			changeNumberLock.unlock();
+		}
+		dataVersion.incrementAndGet();
+	}
+
 	/**
 	 * Closes an EntityManager, rolling back its transaction if it's still
 	 * active
@@ -120,7 +365,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			Task task = createTask(entityManager);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return task;
 		} finally {
 			closeEntityManager(entityManager);
@@ -158,7 +403,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			TimeSegment segment = createTimeSegment(entityManager, parent);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return segment;
 		} finally {
 			closeEntityManager(entityManager);
@@ -181,6 +426,33 @@ public class PersistenceHelper {
 		return segment;
 	}
 
+	/**
+	 * Creates a TimeSegment entity with the specified times and description
+	 * inside an existing EntityManager/transaction. The values are assigned
+	 * before the entity is persisted, so the new TimeSegment is inserted
+	 * without a following update (used by importers). The parent is found in
+	 * the EntityManager; if it's detached (e.g. after the EntityManager was
+	 * cleared), it's loaded again with all of its time segments, so importers
+	 * should only clear the EntityManager after all time segments of a task
+	 * are created.
+	 *
+	 * @param entityManager the EntityManager where the new TimeSegment will be
+	 * persisted
+	 * @param parent the parent Task
+	 * @param startTime the start time
+	 * @param endTime the end time
+	 * @param description the description
+	 * @return the new TimeSegment entity, persisted in JPA
+	 */
+	public TimeSegment createTimeSegment(EntityManager entityManager, Task parent, Date startTime, Date endTime, String description) {
+		parent = entityManager.find(Task.class, parent.getId());
+		TimeSegment segment = parent.createSegment();
+		segment.setStartEndTime(startTime, endTime);
+		segment.setDescription(description);
+		entityManager.persist(segment);
+		return segment;
+	}
+
 	/**
 	 * Creates a CustomField entity
 	 *
@@ -197,7 +469,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			CustomField customField = createCustomField(entityManager);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return customField;
 		} finally {
 			closeEntityManager(entityManager);
@@ -235,7 +507,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			FilterDate filter = createFilterDate(entityManager, type);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return filter;
 		} finally {
 			closeEntityManager(entityManager);
@@ -274,7 +546,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			FilterCustomField filter = createFilterCustomField(entityManager, customField);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return filter;
 		} finally {
 			closeEntityManager(entityManager);
@@ -313,7 +585,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			FilterTaskCompleted filter = createFilterTaskCompleted(entityManager);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 			return filter;
 		} finally {
 			closeEntityManager(entityManager);
@@ -337,13 +609,16 @@ public class PersistenceHelper {
 
 	/**
 	 * Performs a requested change with a supplied TransactedChange. If process
-	 * is shutting down, the change is ignored.
+	 * is shutting down, the change is ignored. Waits until changes queued with
+	 * performTransactedChangeAsync are committed, so that the change sees
+	 * their results.
 	 *
 	 * @param requestedChange a TransactedChange implementation
 	 * @throws ApplicationShuttingDownException if application is shutting down
 	 * and database requests are ignored
 	 */
 	public void performTransactedChange(TransactedChange requestedChange) throws ApplicationShuttingDownException {
+		awaitQueuedChanges();
 		EntityManager entityManager = null;
 		try {
 			shuttingDownLock.readLock().lock();
@@ -352,13 +627,237 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			requestedChange.performChange(entityManager);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Performs a read-only query with a supplied TransactedChange. Entities
+	 * loaded by the query are read-only and are not dirty checked; the session
+	 * is never flushed and its transaction is rolled back instead of being
+	 * committed, so any modifications made by the query are discarded. Waits
+	 * until changes queued with performTransactedChangeAsync are committed, so
+	 * that the query sees their results. If process is shutting down, the
+	 * query is ignored.
+	 *
+	 * @param readOnlyQuery a TransactedChange implementation which only reads
+	 * data
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public void performReadOnlyQuery(TransactedChange readOnlyQuery) throws ApplicationShuttingDownException {
+		awaitQueuedChanges();
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+			Session session = entityManager.unwrap(Session.class);
+			session.setDefaultReadOnly(true);
+			session.setFlushMode(FlushMode.MANUAL);
+			entityManager.getTransaction().begin();
+			readOnlyQuery.performChange(entityManager);
+			entityManager.getTransaction().rollback();
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Queues a requested change to be performed by the writer thread. Changes
+	 * waiting in the queue are committed together in a single transaction
+	 * (group commit). If the group transaction fails, every change in the group
+	 * is retried in its own transaction, so that a failing change only fails
+	 * its own result. TransactedChange.performChange will be called from the
+	 * writer thread.
+	 *
+	 * @param requestedChange a TransactedChange implementation
+	 * @return the future which is completed when the change is committed, or
+	 * completed exceptionally with ApplicationShuttingDownException if
+	 * application is shutting down, or with IllegalStateException if the
+	 * writer thread has stopped
+	 */
+	public CompletableFuture<Void> performTransactedChangeAsync(TransactedChange requestedChange) {
+		QueuedChange queuedChange = new QueuedChange(requestedChange);
+		synchronized (writerLock) {
+			if (writerStopping || shuttingDown) {
+				queuedChange.result.completeExceptionally(new ApplicationShuttingDownException());
+				return queuedChange.result;
+			}
+			if (writerStopped) {
+				queuedChange.result.completeExceptionally(new IllegalStateException(messages.getString("WRITER_THREAD_HAS_STOPPED")));
+				return queuedChange.result;
+			}
+			if (writerThread == null) {
+				writerThread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						processWriterQueue();
+					}
+				}, "PersistenceHelper writer"); //NOI18N
+				writerThread.setDaemon(true);
+				writerThread.start();
+			}
+			writerQueue.add(queuedChange);
+			lastQueuedChange = queuedChange.result;
+		}
+		return queuedChange.result;
+	}
+
+	/**
+	 * Waits until all changes queued for the writer thread are committed (or
+	 * failed). Does nothing if called from the writer thread. Should be called
+	 * before getDataVersion if the version should include the queued changes.
+	 */
+	public void awaitQueuedChanges() {
+		CompletableFuture<Void> lastChange;
+		synchronized (writerLock) {
+			if (Thread.currentThread() == writerThread)
+				return;
+			lastChange = lastQueuedChange;
+		}
+		try {
+			lastChange.join();
+		} catch (CompletionException ex) {
+			//Failures are reported through the failed change's own result
+		}
+	}
+
+	/**
+	 * Performs an EntityManager.merge operation in the writer thread
+	 *
+	 * @param entity the entity to be merged
+	 * @return the future which is completed when the entity is merged
+	 * @see #performTransactedChangeAsync(org.zlogic.att.data.TransactedChange)
+	 */
+	public CompletableFuture<Void> mergeEntityAsync(Object entity) {
+		return performTransactedChangeAsync(new TransactedChange() {
+			private Object entity;
+
+			public TransactedChange setEntity(Object entity) {
+				this.entity = entity;
+				return this;
+			}
+
+			@Override
+			public void performChange(EntityManager entityManager) {
+				entityManager.merge(entity);
+			}
+		}.setEntity(entity));
+	}
+
+	/**
+	 * Writer thread loop: takes all changes waiting in the queue and commits
+	 * them in a single transaction. Exits after the stop marker is received or
+	 * if the thread is interrupted; changes which are still queued when the
+	 * loop exits are failed, so that nobody waits for them forever.
+	 */
+	private void processWriterQueue() {
+		try {
+			boolean stop = false;
+			while (!stop) {
+				List<QueuedChange> group = new ArrayList<>();
+				try {
+					group.add(writerQueue.take());
+				} catch (InterruptedException ex) {
+					log.log(Level.SEVERE, messages.getString("WRITER_THREAD_WAS_INTERRUPTED"), ex);
+					break;
+				}
+				writerQueue.drainTo(group, MAX_GROUP_COMMIT_SIZE - group.size());
+				stop = group.remove(writerStopMarker);
+				if (group.isEmpty())
+					continue;
+				Throwable groupException = commitChanges(group);
+				if (groupException == null) {
+					for (QueuedChange queuedChange : group)
+						queuedChange.result.complete(null);
+				} else if (group.size() == 1) {
+					group.get(0).result.completeExceptionally(groupException);
+				} else {
+					log.log(Level.WARNING, messages.getString("GROUP_COMMIT_FAILED_RETRYING_CHANGES_INDIVIDUALLY"), groupException);
+					for (QueuedChange queuedChange : group) {
+						List<QueuedChange> singleChange = new ArrayList<>(1);
+						singleChange.add(queuedChange);
+						Throwable changeException = commitChanges(singleChange);
+						if (changeException == null)
+							queuedChange.result.complete(null);
+						else
+							queuedChange.result.completeExceptionally(changeException);
+					}
+				}
+			}
+		} finally {
+			//Reject new changes and fail the ones which will never be performed
+			synchronized (writerLock) {
+				writerStopped = true;
+			}
+			List<QueuedChange> remainingChanges = new ArrayList<>();
+			writerQueue.drainTo(remainingChanges);
+			remainingChanges.remove(writerStopMarker);
+			for (QueuedChange queuedChange : remainingChanges)
+				queuedChange.result.completeExceptionally(new IllegalStateException(messages.getString("WRITER_THREAD_HAS_STOPPED")));
+		}
+	}
+
+	/**
+	 * Performs a list of changes in a single transaction
+	 *
+	 * @param changes the changes to perform
+	 * @return the exception (or error) which caused the transaction to fail,
+	 * or null if the transaction was committed successfully
+	 */
+	private Throwable commitChanges(List<QueuedChange> changes) {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+			entityManager.getTransaction().begin();
+			for (QueuedChange queuedChange : changes)
+				queuedChange.change.performChange(entityManager);
+			commitTransaction(entityManager);
+			return null;
+		} catch (Throwable ex) {
+			try {
+				if (entityManager != null && entityManager.isOpen() && entityManager.getTransaction().isActive())
+					entityManager.getTransaction().rollback();
+			} catch (Throwable rollbackException) {
+				ex.addSuppressed(rollbackException);
+			}
+			return ex;
 		} finally {
 			closeEntityManager(entityManager);
 			shuttingDownLock.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Stops accepting asynchronous changes and waits until the writer thread
+	 * commits all queued changes
+	 */
+	private void stopWriterThread() {
+		Thread thread;
+		synchronized (writerLock) {
+			writerStopping = true;
+			thread = writerThread;
+			if (thread != null)
+				writerQueue.add(writerStopMarker);
+		}
+		if (thread == null)
+			return;
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			log.log(Level.SEVERE, messages.getString("WRITER_THREAD_WAS_INTERRUPTED"), ex);
+		}
+	}
+
 	/**
 	 * Performs an EntityManager.merge operation in a new EntityManager
 	 * instance/transaction
@@ -376,7 +875,7 @@ public class PersistenceHelper {
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
 			entityManager.merge(entity);
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 		} finally {
 			closeEntityManager(entityManager);
 			shuttingDownLock.readLock().unlock();
@@ -517,6 +1016,77 @@ public class PersistenceHelper {
 		}
 	}
 
+	/**
+	 * Fetches the latest versions of specific tasks in the database, along
+	 * with associated objects
+	 *
+	 * @param taskIds IDs of tasks to load (long lists are split into several
+	 * queries)
+	 * @return the tasks which exist in the database
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public List<Task> getTasksFromDatabase(Collection<Long> taskIds) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			if (taskIds.isEmpty())
+				return new LinkedList<>();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			//Split the IDs to keep the IN (...) lists short
+			List<Long> taskIdsList = new ArrayList<>(taskIds);
+			List<Task> result = new LinkedList<>();
+			for (int i = 0; i < taskIdsList.size(); i += MAX_IN_LIST_SIZE) {
+				CriteriaQuery<Task> tasksCriteriaQuery = criteriaBuilder.createQuery(Task.class);
+				Root<Task> taskRoot = tasksCriteriaQuery.from(Task.class);
+				tasksCriteriaQuery.where(taskRoot.get(Task_.id).in(taskIdsList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, taskIdsList.size())))).distinct(true);
+				result.addAll(entityManager.createQuery(tasksCriteriaQuery).getResultList());
+			}
+
+			return result;
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns IDs of tasks which have time segments overlapping a time range.
+	 * TimeSegments are not loaded, the query is served by the (endTime,
+	 * startTime) index.
+	 *
+	 * @param startTime the range start time
+	 * @param endTime the range end time
+	 * @return IDs of tasks with time segments overlapping the range
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public Set<Long> getTimeSegmentOwnerIds(Date startTime, Date endTime) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Long> idsCriteriaQuery = criteriaBuilder.createQuery(Long.class);
+			Root<TimeSegment> timeSegmentRoot = idsCriteriaQuery.from(TimeSegment.class);
+			idsCriteriaQuery.select(timeSegmentRoot.get(TimeSegment_.owner).get(Task_.id)).distinct(true).where(criteriaBuilder.and(
+					criteriaBuilder.greaterThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.endTime), startTime),
+					criteriaBuilder.lessThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.startTime), endTime)));
+
+			return new TreeSet<>(entityManager.createQuery(idsCriteriaQuery).getResultList());
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Returns all tasks from database inside an existing
 	 * EntityManager/transaction
@@ -537,42 +1107,363 @@ public class PersistenceHelper {
 			CriteriaQuery<Task> tasksCriteriaQuery = criteriaBuilder.createQuery(Task.class);
 			Root<Task> taskRoot = tasksCriteriaQuery.from(Task.class);
 
-			List<Filter> filters = getAllFilters();
+			if (applyFilters)
+				tasksCriteriaQuery.where(createFiltersPredicate(criteriaBuilder, tasksCriteriaQuery, taskRoot, getAllFilters()));
 
-			if (applyFilters) {
-				Predicate filtersPredicate = criteriaBuilder.conjunction();
-				for (Filter filter : filters)
-					filtersPredicate = criteriaBuilder.and(filtersPredicate, filter.getFilterPredicate(criteriaBuilder, taskRoot));
-				tasksCriteriaQuery.where(filtersPredicate);
-			}
-			tasksCriteriaQuery.distinct(true);
+			return entityManager.createQuery(tasksCriteriaQuery).getResultList();
+		} finally {
+			shuttingDownLock.readLock().unlock();
+		}
+	}
 
-			List<Task> result = entityManager.createQuery(tasksCriteriaQuery).getResultList();
+	/**
+	 * Returns a page of tasks from database, ordered by ID. Used to iterate
+	 * through all tasks without keeping them in memory: each page is loaded in
+	 * a separate EntityManager, and the next page starts after the last ID of
+	 * the previous page. Filters are not applied.
+	 *
+	 * @param afterId return only tasks with an ID greater than this ID (or
+	 * null to start from the first task)
+	 * @param maxResults the maximum number of tasks to return
+	 * @return the page of tasks (an empty list if there are no more tasks)
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public List<Task> getTasksPage(Long afterId, int maxResults) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
 
-			//Apply empty filters
-			if (applyFilters) {
-				for (Filter filter : filters) {
-					if (!(filter instanceof FilterCustomField))
-						continue;
-					FilterCustomField filterCustomField = (FilterCustomField) filter;
-					if (!(filterCustomField.getCustomFieldValue() == null || filterCustomField.getCustomFieldValue().isEmpty()))
-						continue;
-					List<Task> tempResult = new LinkedList<>();
-					for (Task task : result) {
-						String customFieldValue = task.getCustomField(filterCustomField.getCustomField());
-						if (customFieldValue == null || customFieldValue.isEmpty())
-							tempResult.add(task);
-					}
-					result = tempResult;
-				}
-			}
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Task> tasksCriteriaQuery = criteriaBuilder.createQuery(Task.class);
+			Root<Task> taskRoot = tasksCriteriaQuery.from(Task.class);
+			if (afterId != null)
+				tasksCriteriaQuery.where(criteriaBuilder.greaterThan(taskRoot.get(Task_.id), afterId));
+			tasksCriteriaQuery.orderBy(criteriaBuilder.asc(taskRoot.get(Task_.id)));
+
+			List<Task> result = entityManager.createQuery(tasksCriteriaQuery).setMaxResults(maxResults).getResultList();
+
+			return result;
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns summaries of all tasks from database. TimeSegments are not
+	 * loaded, their first/last/total times are aggregated by the database.
+	 *
+	 * @param applyFilters apply filters currently in the database to the
+	 * resulting list
+	 * @param clipStartTime the start time for the clipped total time (or null
+	 * if not limited)
+	 * @param clipEndTime the end time for the clipped total time (or null if
+	 * not limited)
+	 * @return summaries of all tasks from database
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public List<TaskSummary> getAllTaskSummaries(boolean applyFilters, Date clipStartTime, Date clipEndTime) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			List<TaskSummary> result = getAllTaskSummaries(entityManager, applyFilters, clipStartTime, clipEndTime);
+
+			return result;
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns summaries of all tasks from database. TimeSegments are not
+	 * loaded, their first/last/total times are aggregated by the database.
+	 *
+	 * @param entityManager the EntityManager to be used for the query
+	 * @param applyFilters apply filters currently in the database to the
+	 * resulting list
+	 * @param clipStartTime the start time for the clipped total time (or null
+	 * if not limited)
+	 * @param clipEndTime the end time for the clipped total time (or null if
+	 * not limited)
+	 * @return summaries of all tasks from database
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public List<TaskSummary> getAllTaskSummaries(EntityManager entityManager, boolean applyFilters, Date clipStartTime, Date clipEndTime) throws ApplicationShuttingDownException {
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			List<Filter> filters = applyFilters ? getAllFilters(entityManager) : new LinkedList<Filter>();
+			return getTaskSummaries(entityManager, filters, null, clipStartTime, clipEndTime);
+		} finally {
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns summaries of specific tasks from database. TimeSegments are not
+	 * loaded, their first/last/total times are aggregated by the database.
+	 *
+	 * @param taskIds IDs of tasks to load (long lists are split into several
+	 * queries)
+	 * @param clipStartTime the start time for the clipped total time (or null
+	 * if not limited)
+	 * @param clipEndTime the end time for the clipped total time (or null if
+	 * not limited)
+	 * @return summaries of the requested tasks which exist in the database
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public List<TaskSummary> getTaskSummaries(Collection<Long> taskIds, Date clipStartTime, Date clipEndTime) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			if (taskIds.isEmpty())
+				return new LinkedList<>();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			//Split the IDs to keep the IN (...) lists short
+			List<Long> taskIdsList = new ArrayList<>(taskIds);
+			List<TaskSummary> result = new LinkedList<>();
+			for (int i = 0; i < taskIdsList.size(); i += MAX_IN_LIST_SIZE)
+				result.addAll(getTaskSummaries(entityManager, new LinkedList<Filter>(), taskIdsList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, taskIdsList.size())), clipStartTime, clipEndTime));
 
 			return result;
 		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns IDs of tasks from database
+	 *
+	 * @param applyFilters apply filters currently in the database to the
+	 * resulting set
+	 * @param changedAfter return only tasks which were modified (or had their
+	 * time segments modified) with a change number greater than this one (see
+	 * getChangeNumber); null to return all tasks
+	 * @return IDs of tasks
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public Set<Long> getTaskIds(boolean applyFilters, Long changedAfter) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Long> idsCriteriaQuery = criteriaBuilder.createQuery(Long.class);
+			Root<Task> taskRoot = idsCriteriaQuery.from(Task.class);
+
+			List<Filter> filters = applyFilters ? getAllFilters(entityManager) : new LinkedList<Filter>();
+			Predicate predicate = criteriaBuilder.conjunction();
+			if (applyFilters)
+				predicate = criteriaBuilder.and(predicate, createFiltersPredicate(criteriaBuilder, idsCriteriaQuery, taskRoot, filters));
+			if (changedAfter != null)
+				predicate = criteriaBuilder.and(predicate, criteriaBuilder.greaterThan(taskRoot.get(Task_.changeNumber), changedAfter));
+			idsCriteriaQuery.select(taskRoot.get(Task_.id)).where(predicate);
+
+			Set<Long> result = new TreeSet<>(entityManager.createQuery(idsCriteriaQuery).getResultList());
+
+			return result;
+		} finally {
+			closeEntityManager(entityManager);
+			shuttingDownLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns IDs of tasks which were deleted after a change number
+	 *
+	 * @param deletedAfter return only tasks deleted with a change number
+	 * greater than this one (see getChangeNumber)
+	 * @return IDs of deleted tasks
+	 * @throws ApplicationShuttingDownException if application is shutting down
+	 * and database requests are ignored
+	 */
+	public Set<Long> getDeletedTaskIds(long deletedAfter) throws ApplicationShuttingDownException {
+		EntityManager entityManager = null;
+		try {
+			shuttingDownLock.readLock().lock();
+			if (shuttingDown)
+				throw new ApplicationShuttingDownException();
+			entityManager = entityManagerFactory.createEntityManager();
+
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Long> idsCriteriaQuery = criteriaBuilder.createQuery(Long.class);
+			Root<DeletedTask> deletedTaskRoot = idsCriteriaQuery.from(DeletedTask.class);
+			idsCriteriaQuery.select(deletedTaskRoot.get(DeletedTask_.id))
+					.where(criteriaBuilder.greaterThan(deletedTaskRoot.get(DeletedTask_.changeNumber), deletedAfter));
+
+			return new TreeSet<>(entityManager.createQuery(idsCriteriaQuery).getResultList());
+		} finally {
+			closeEntityManager(entityManager);
 			shuttingDownLock.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Returns summaries of tasks from database
+	 *
+	 * @param entityManager the EntityManager to be used for the query
+	 * @param filters filters to apply to the resulting list
+	 * @param taskIds IDs of tasks to load, or null to load all tasks
+	 * @param clipStartTime the start time for the clipped total time (or null
+	 * if not limited)
+	 * @param clipEndTime the end time for the clipped total time (or null if
+	 * not limited)
+	 * @return summaries of the tasks
+	 */
+	private List<TaskSummary> getTaskSummaries(EntityManager entityManager, List<Filter> filters, Collection<Long> taskIds, Date clipStartTime, Date clipEndTime) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+		//Aggregate times
+		CriteriaQuery<Tuple> summaryCriteriaQuery = criteriaBuilder.createTupleQuery();
+		Root<Task> taskRoot = summaryCriteriaQuery.from(Task.class);
+		Join<Task, TimeSegment> timeSegmentJoin = taskRoot.join(Task_.timeSegments, JoinType.LEFT);
+		Expression<Date> startTime = timeSegmentJoin.get(TimeSegment_.startTime);
+		Expression<Date> endTime = timeSegmentJoin.get(TimeSegment_.endTime);
+		Expression<Long> clippedDuration = getClippedDurationMillis(criteriaBuilder, startTime, endTime, clipStartTime, clipEndTime);
+
+		summaryCriteriaQuery.multiselect(
+				taskRoot.get(Task_.id),
+				taskRoot.get(Task_.name),
+				taskRoot.get(Task_.description),
+				taskRoot.get(Task_.completed),
+				criteriaBuilder.least(startTime),
+				criteriaBuilder.greatest(endTime),
+				criteriaBuilder.sum(getDurationMillis(criteriaBuilder, startTime, endTime)),
+				criteriaBuilder.sum(clippedDuration));
+		summaryCriteriaQuery.where(createTasksRestriction(criteriaBuilder, summaryCriteriaQuery, taskRoot, filters, taskIds));
+		summaryCriteriaQuery.groupBy(taskRoot.get(Task_.id), taskRoot.get(Task_.name), taskRoot.get(Task_.description), taskRoot.get(Task_.completed));
+
+		TreeMap<Long, TaskSummary> summaries = new TreeMap<>();
+		for (Tuple entry : entityManager.createQuery(summaryCriteriaQuery).getResultList()) {
+			Number totalTime = entry.get(6, Number.class);
+			Number clippedTotalTime = entry.get(7, Number.class);
+			TaskSummary summary = new TaskSummary(
+					entry.get(0, Long.class),
+					entry.get(1, String.class),
+					entry.get(2, String.class),
+					Boolean.TRUE.equals(entry.get(3, Boolean.class)),
+					entry.get(4, Date.class),
+					entry.get(5, Date.class),
+					Duration.ofMillis(totalTime == null ? 0 : totalTime.longValue()),
+					Duration.ofMillis(clippedTotalTime == null ? 0 : clippedTotalTime.longValue()),
+					clipStartTime,
+					clipEndTime);
+			summaries.put(summary.getId(), summary);
+		}
+
+		//Custom field values
+		CriteriaQuery<Tuple> fieldsCriteriaQuery = criteriaBuilder.createTupleQuery();
+		Root<Task> fieldsTaskRoot = fieldsCriteriaQuery.from(Task.class);
+		Root<CustomField> customFieldRoot = fieldsCriteriaQuery.from(CustomField.class);
+		MapJoin<Task, CustomField, String> customFieldJoin = fieldsTaskRoot.join(Task_.customFields);
+		customFieldJoin = customFieldJoin.on(criteriaBuilder.equal(customFieldJoin.key(), customFieldRoot));
+		fieldsCriteriaQuery.multiselect(fieldsTaskRoot.get(Task_.id), customFieldRoot, customFieldJoin.value());
+		fieldsCriteriaQuery.where(createTasksRestriction(criteriaBuilder, fieldsCriteriaQuery, fieldsTaskRoot, filters, taskIds));
+		for (Tuple entry : entityManager.createQuery(fieldsCriteriaQuery).getResultList()) {
+			TaskSummary summary = summaries.get(entry.get(0, Long.class));
+			if (summary != null)
+				summary.setCustomField(entry.get(1, CustomField.class), entry.get(2, String.class));
+		}
+
+		return new LinkedList<>(summaries.values());
+	}
+
+	/**
+	 * Creates a predicate restricting tasks to the ones matching the filters
+	 * and (optionally) a list of IDs
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param query the query which will use the predicate
+	 * @param taskRoot the task root of the query
+	 * @param filters the filters to apply
+	 * @param taskIds IDs of tasks to return, or null to not restrict by ID
+	 * @return the predicate restricting tasks
+	 */
+	private Predicate createTasksRestriction(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot, List<Filter> filters, Collection<Long> taskIds) {
+		Predicate predicate = criteriaBuilder.conjunction();
+		if (!filters.isEmpty())
+			predicate = criteriaBuilder.and(predicate, createFiltersPredicate(criteriaBuilder, query, taskRoot, filters));
+		if (taskIds != null)
+			predicate = criteriaBuilder.and(predicate, taskRoot.get(Task_.id).in(taskIds));
+		return predicate;
+	}
+
+	/**
+	 * Creates a predicate restricting tasks to the ones matching the filters.
+	 * Filters are applied as correlated subqueries, so combining filters
+	 * doesn't multiply the number of rows.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param query the query which will use the predicate
+	 * @param taskRoot the task root of the query
+	 * @param filters the filters to apply
+	 * @return the predicate restricting tasks
+	 */
+	private Predicate createFiltersPredicate(CriteriaBuilder criteriaBuilder, AbstractQuery<?> query, Root<Task> taskRoot, List<Filter> filters) {
+		Predicate filtersPredicate = criteriaBuilder.conjunction();
+		for (Filter filter : filters)
+			filtersPredicate = criteriaBuilder.and(filtersPredicate, filter.getFilterPredicate(criteriaBuilder, query, taskRoot));
+		return filtersPredicate;
+	}
+
+	/**
+	 * Returns an expression computing the duration between two times in
+	 * milliseconds
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param startTime the start time
+	 * @param endTime the end time
+	 * @return the expression computing the duration in milliseconds
+	 */
+	private Expression<Long> getDurationMillis(CriteriaBuilder criteriaBuilder, Expression<Date> startTime, Expression<Date> endTime) {
+		return criteriaBuilder.function("DATEDIFF", Long.class, criteriaBuilder.literal("MS"), startTime, endTime); //NOI18N
+	}
+
+	/**
+	 * Returns an expression computing the duration between two times in
+	 * milliseconds, clipped by clipStartTime and clipEndTime. The duration is
+	 * zero if the times don't overlap the clip range.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param startTime the start time
+	 * @param endTime the end time
+	 * @param clipStartTime the clip start time (or null if not limited)
+	 * @param clipEndTime the clip end time (or null if not limited)
+	 * @return the expression computing the clipped duration in milliseconds
+	 */
+	public Expression<Long> getClippedDurationMillis(CriteriaBuilder criteriaBuilder, Expression<Date> startTime, Expression<Date> endTime, Date clipStartTime, Date clipEndTime) {
+		Expression<Date> clippedStartTime = startTime;
+		if (clipStartTime != null)
+			clippedStartTime = criteriaBuilder.<Date>selectCase().when(criteriaBuilder.lessThan(startTime, clipStartTime), criteriaBuilder.literal(clipStartTime)).otherwise(startTime);
+		Expression<Date> clippedEndTime = endTime;
+		if (clipEndTime != null)
+			clippedEndTime = criteriaBuilder.<Date>selectCase().when(criteriaBuilder.greaterThan(endTime, clipEndTime), criteriaBuilder.literal(clipEndTime)).otherwise(endTime);
+		return criteriaBuilder.<Long>selectCase()
+				.when(criteriaBuilder.lessThan(clippedStartTime, clippedEndTime), getDurationMillis(criteriaBuilder, clippedStartTime, clippedEndTime))
+				.otherwise(criteriaBuilder.literal(0L));
+	}
+
 	/**
 	 * Returns all custom fields from database
 	 *
@@ -602,13 +1493,15 @@ public class PersistenceHelper {
 	}
 
 	/**
-	 * Returns all custom field values from database
+	 * Returns the custom field value dictionary: all distinct custom field
+	 * values and the number of tasks using each value, grouped by the
+	 * database
 	 *
-	 * @return all custom field values from database
+	 * @return the custom field value dictionary
 	 * @throws ApplicationShuttingDownException if application is shutting down
 	 * and database requests are ignored
 	 */
-	public Map<CustomField, Set<String>> getAllCustomFieldValues() throws ApplicationShuttingDownException {
+	public List<CustomFieldValueUsage> getCustomFieldValueUsages() throws ApplicationShuttingDownException {
 		EntityManager entityManager = null;
 		try {
 			shuttingDownLock.readLock().lock();
@@ -622,17 +1515,24 @@ public class PersistenceHelper {
 			Root<CustomField> customFieldRoot = fieldsCriteriaQuery.from(CustomField.class);
 			MapJoin<Task, CustomField, String> customFieldJoin = taskRoot.join(Task_.customFields);
 			customFieldJoin = customFieldJoin.on(criteriaBuilder.equal(customFieldJoin.key(), customFieldRoot));
-			fieldsCriteriaQuery.multiselect(customFieldRoot, customFieldJoin.value()).distinct(true);
+			fieldsCriteriaQuery.multiselect(customFieldRoot.get(CustomField_.id), customFieldJoin.value(), criteriaBuilder.count(taskRoot));
+			fieldsCriteriaQuery.groupBy(customFieldRoot.get(CustomField_.id), customFieldJoin.value());
 
 			List<Tuple> resultList = entityManager.createQuery(fieldsCriteriaQuery).getResultList();
 
-			TreeMap<CustomField, Set<String>> result = new TreeMap<>();
+			//Custom fields are few, resolve them in a single query
+			CriteriaQuery<CustomField> customFieldsCriteriaQuery = criteriaBuilder.createQuery(CustomField.class);
+			customFieldsCriteriaQuery.select(customFieldsCriteriaQuery.from(CustomField.class));
+			Map<Long, CustomField> customFields = new TreeMap<>();
+			for (CustomField customField : entityManager.createQuery(customFieldsCriteriaQuery).getResultList())
+				customFields.put(customField.getId(), customField);
+
+			List<CustomFieldValueUsage> result = new LinkedList<>();
 			for (Tuple entry : resultList) {
-				CustomField customField = entry.get(0, CustomField.class);
+				CustomField customField = customFields.get(entry.get(0, Long.class));
 				String customFieldValue = entry.get(1, String.class);
-				if (!result.containsKey(customField))
-					result.put(customField, new TreeSet<>());
-				result.get(customField).add(customFieldValue);
+				if (customField != null && customFieldValue != null)
+					result.add(new CustomFieldValueUsage(customField, customFieldValue, entry.get(2, Long.class)));
 			}
 			return result;
 		} finally {
@@ -641,6 +1541,66 @@ public class PersistenceHelper {
 		}
 	}
 
+	/**
+	 * Deletes a task and its time segments inside an existing
+	 * EntityManager/transaction, and records the deletion so that it's
+	 * returned by getDeletedTaskIds
+	 *
+	 * @param entityManager the EntityManager to be used for the deletion
+	 * @param task the task to delete
+	 */
+	public void deleteTask(EntityManager entityManager, Task task) {
+		task = entityManager.find(Task.class, task.getId());
+		if (task == null)
+			return;
+		entityManager.remove(task);
+		entityManager.persist(new DeletedTask(task.getId()));
+	}
+
+	/**
+	 * Deletes a custom field and its values inside an existing
+	 * EntityManager/transaction. The values are removed with bulk statements,
+	 * without loading any tasks; affected tasks are marked as modified. Element collections can't be changed by JPQL bulk statements,
+	 * so the values are deleted with a native statement using the table and
+	 * column names set in the Task.customFields mapping.
+	 *
+	 * @param entityManager the EntityManager to be used for the deletion
+	 * @param customField the custom field to delete
+	 * @return IDs of tasks which had a value for the deleted custom field
+	 */
+	public Set<Long> deleteCustomField(EntityManager entityManager, CustomField customField) {
+		customField = entityManager.find(CustomField.class, customField.getId());
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+		//Find affected tasks
+		CriteriaQuery<Long> idsCriteriaQuery = criteriaBuilder.createQuery(Long.class);
+		Root<Task> taskRoot = idsCriteriaQuery.from(Task.class);
+		Root<CustomField> customFieldRoot = idsCriteriaQuery.from(CustomField.class);
+		MapJoin<Task, CustomField, String> customFieldJoin = taskRoot.join(Task_.customFields);
+		customFieldJoin.on(criteriaBuilder.equal(customFieldJoin.key(), customFieldRoot));
+		idsCriteriaQuery.select(taskRoot.get(Task_.id)).where(criteriaBuilder.equal(customFieldRoot, customField));
+		Set<Long> affectedTaskIds = new TreeSet<>(entityManager.createQuery(idsCriteriaQuery).getResultList());
+
+		if (!affectedTaskIds.isEmpty()) {
+			//Hibernate can't join collections in bulk statements, so the already found IDs are used
+			List<Long> affectedTaskIdsList = new ArrayList<>(affectedTaskIds);
+			for (int i = 0; i < affectedTaskIdsList.size(); i += MAX_IN_LIST_SIZE) {
+				CriteriaUpdate<Task> modifiedCriteriaUpdate = criteriaBuilder.createCriteriaUpdate(Task.class);
+				Root<Task> modifiedTaskRoot = modifiedCriteriaUpdate.from(Task.class);
+				modifiedCriteriaUpdate.set(modifiedTaskRoot.get(Task_.changeNumber), (Long) null)
+						.where(modifiedTaskRoot.get(Task_.id).in(affectedTaskIdsList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, affectedTaskIdsList.size()))));
+				entityManager.createQuery(modifiedCriteriaUpdate).executeUpdate();
+			}
+			//Element collections cannot be changed with JPQL bulk statements
+			entityManager.createNativeQuery("DELETE FROM Task_customFields WHERE customFields_KEY=?") //NOI18N
+					.setParameter(1, customField.getId())
+					.executeUpdate();
+		}
+
+		entityManager.remove(customField);
+		return affectedTaskIds;
+	}
+
 	/**
 	 * Returns a ConfigurationElement for its name
 	 *
@@ -681,7 +1641,7 @@ public class PersistenceHelper {
 
 			importer.importData(this, entityManager);
 
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
 		} finally {
 			closeEntityManager(entityManager);
 			shuttingDownLock.readLock().unlock();
@@ -689,38 +1649,38 @@ public class PersistenceHelper {
 	}
 
 	/**
-	 * Removes any orphaned entities
+	 * Removes any orphaned entities. Time segments which don't belong to any
+	 * task are removed by a single DELETE statement.
 	 *
+	 * @return the number of removed time segments
 	 * @throws ApplicationShuttingDownException if application is shutting down
 	 * and database requests are ignored
 	 */
-	public void cleanupDB() throws ApplicationShuttingDownException {
+	public int cleanupDB() throws ApplicationShuttingDownException {
 		EntityManager entityManager = null;
 		try {
 			shuttingDownLock.readLock().lock();
 			if (shuttingDown)
 				throw new ApplicationShuttingDownException();
+			Instant cleanupStarted = Instant.now();
 			entityManager = entityManagerFactory.createEntityManager();
 			entityManager.getTransaction().begin();
-			List<Task> tasks = getAllTasks(entityManager, false);
 
 			//Cleanup time segments
-			Set<TimeSegment> ownedTimeSegments = new TreeSet<>();
-			Set<TimeSegment> allTimeSegments = new TreeSet<>();
-			for (Task task : tasks)
-				ownedTimeSegments.addAll(task.getTimeSegments());
-
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-			CriteriaQuery<TimeSegment> timeSegmentsCriteriaQuery = criteriaBuilder.createQuery(TimeSegment.class);
-			timeSegmentsCriteriaQuery.from(TimeSegment.class);
-
-			allTimeSegments.addAll(entityManager.createQuery(timeSegmentsCriteriaQuery).getResultList());
-			allTimeSegments.removeAll(ownedTimeSegments);
+			CriteriaDelete<TimeSegment> timeSegmentsCriteriaDelete = criteriaBuilder.createCriteriaDelete(TimeSegment.class);
+			Root<TimeSegment> timeSegmentRoot = timeSegmentsCriteriaDelete.from(TimeSegment.class);
+			Subquery<Long> ownerSubquery = timeSegmentsCriteriaDelete.subquery(Long.class);
+			Root<Task> taskRoot = ownerSubquery.from(Task.class);
+			Join<Task, TimeSegment> timeSegmentJoin = taskRoot.join(Task_.timeSegments);
+			ownerSubquery.select(taskRoot.get(Task_.id)).where(criteriaBuilder.equal(timeSegmentJoin.get(TimeSegment_.id), timeSegmentRoot.get(TimeSegment_.id)));
+			timeSegmentsCriteriaDelete.where(criteriaBuilder.not(criteriaBuilder.exists(ownerSubquery)));
 
-			for (TimeSegment timeSegment : allTimeSegments)
-				entityManager.remove(timeSegment);
+			int removedTimeSegments = entityManager.createQuery(timeSegmentsCriteriaDelete).executeUpdate();
 
-			entityManager.getTransaction().commit();
+			commitTransaction(entityManager);
+			log.log(Level.INFO, messages.getString("REMOVED_ORPHANED_TIME_SEGMENTS"), new Object[]{removedTimeSegments, Duration.between(cleanupStarted, Instant.now()).toMillis()});
+			return removedTimeSegments;
 		} finally {
 			closeEntityManager(entityManager);
 			shuttingDownLock.readLock().unlock();
@@ -7,19 +7,29 @@ package org.zlogic.att.data;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyJoinColumn;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
 /**
  * Entity class for a tracked task. Each task's time is tracked with
@@ -29,13 +39,16 @@ import javax.persistence.OneToMany;
  * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
  */
 @Entity
+@Table(indexes = {
+	@Index(name = "Task_changeNumber", columnList = "changeNumber")})
 public class Task implements Serializable {
 
 	/**
 	 * JPA ID
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE)
+	@SequenceGenerator(name = "TaskSequence", sequenceName = "hibernate_sequence", allocationSize = PersistenceHelper.ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TaskSequence")
 	private long id;
 	/**
 	 * The task description
@@ -51,14 +64,26 @@ public class Task implements Serializable {
 	@OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
 	private Set<TimeSegment> timeSegments;
 	/**
-	 * Values of custom fields
+	 * Values of custom fields. The table and column names are the defaults
+	 * generated by earlier versions; they're explicitly set since they're
+	 * used by the index and by PersistenceHelper.deleteCustomField.
 	 */
 	@ElementCollection(fetch = FetchType.EAGER)
+	@CollectionTable(name = "Task_customFields", joinColumns = @JoinColumn(name = "Task_id"), indexes = {
+		@Index(name = "Task_customFields_key_value", columnList = "customFields_KEY, customFields")})
+	@MapKeyJoinColumn(name = "customFields_KEY")
+	@Column(name = "customFields")
 	private Map<CustomField, String> customFields;
 	/**
 	 * Boolean setting indicating the task is completed
 	 */
 	private Boolean completed;
+	/**
+	 * The change number assigned by the database when this task, its time
+	 * segments or custom fields were last modified (null until the modifying
+	 * transaction is committed)
+	 */
+	private Long changeNumber;
 
 	/**
 	 * Default constructor
@@ -90,6 +115,7 @@ public class Task implements Serializable {
 	 */
 	public void addSegment(TimeSegment segment) {
 		timeSegments.add(segment);
+		markModified();
 	}
 
 	/**
@@ -99,6 +125,7 @@ public class Task implements Serializable {
 	 */
 	public void removeSegment(TimeSegment segment) {
 		timeSegments.remove(segment);
+		markModified();
 	}
 
 	/**
@@ -170,7 +197,7 @@ public class Task implements Serializable {
 	 * @return the task's completion state
 	 */
 	public boolean getCompleted() {
-		return completed;
+		return completed != null && completed;
 	}
 
 	/**
@@ -192,6 +219,15 @@ public class Task implements Serializable {
 		return customFields.get(field);
 	}
 
+	/**
+	 * Returns all custom field values of this task
+	 *
+	 * @return the unmodifiable map of custom field values, custom field=key
+	 */
+	protected Map<CustomField, String> getCustomFields() {
+		return Collections.unmodifiableMap(customFields);
+	}
+
 	/**
 	 * Sets the task's custom field value
 	 *
@@ -203,6 +239,7 @@ public class Task implements Serializable {
 			customFields.remove(customField);
 		else
 			customFields.put(customField, value);
+		markModified();
 	}
 
 	/**
@@ -223,6 +260,28 @@ public class Task implements Serializable {
 		return id;
 	}
 
+	/**
+	 * Returns the change number assigned when this task was last modified
+	 *
+	 * @return the change number assigned when this task was last modified
+	 * (null if the task was modified after it was loaded)
+	 */
+	public Long getChangeNumber() {
+		return changeNumber;
+	}
+
+	/**
+	 * Marks this task as modified; PersistenceHelper assigns a new change
+	 * number when the transaction is committed. Called automatically by JPA,
+	 * and when a collection or a time segment is modified (these changes don't
+	 * trigger JPA callbacks for the task).
+	 */
+	@PrePersist
+	@PreUpdate
+	protected void markModified() {
+		changeNumber = null;
+	}
+
 	/**
 	 * Returns this class instance (return this); required for some reflection
 	 * functions
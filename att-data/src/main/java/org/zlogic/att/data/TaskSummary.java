@@ -0,0 +1,255 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only projection of a Task, used to display the task list without
+ * loading the task's TimeSegments. Time values are aggregated by the
+ * database.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class TaskSummary {
+
+	/**
+	 * The task ID
+	 */
+	private final long id;
+	/**
+	 * The task name
+	 */
+	private final String name;
+	/**
+	 * The task description
+	 */
+	private final String description;
+	/**
+	 * Boolean setting indicating the task is completed
+	 */
+	private final boolean completed;
+	/**
+	 * Values of custom fields
+	 */
+	private final Map<CustomField, String> customFields = new TreeMap<>();
+	/**
+	 * The earliest start time of all TimeSegments, or null if task has no
+	 * TimeSegments
+	 */
+	private final Date firstTime;
+	/**
+	 * The latest end time of all TimeSegments, or null if task has no
+	 * TimeSegments
+	 */
+	private final Date lastTime;
+	/**
+	 * The total time of all TimeSegments
+	 */
+	private final Duration totalTime;
+	/**
+	 * The total time of all TimeSegments, clipped by clipStartTime and
+	 * clipEndTime
+	 */
+	private final Duration clippedTotalTime;
+	/**
+	 * The clip start time used for clippedTotalTime (or null if not limited)
+	 */
+	private final Date clipStartTime;
+	/**
+	 * The clip end time used for clippedTotalTime (or null if not limited)
+	 */
+	private final Date clipEndTime;
+
+	/**
+	 * Constructs a TaskSummary
+	 *
+	 * @param id the task ID
+	 * @param name the task name
+	 * @param description the task description
+	 * @param completed true if the task is completed
+	 * @param firstTime the earliest start time of all TimeSegments
+	 * @param lastTime the latest end time of all TimeSegments
+	 * @param totalTime the total time of all TimeSegments
+	 * @param clippedTotalTime the total time of all TimeSegments, clipped by
+	 * clipStartTime and clipEndTime
+	 * @param clipStartTime the clip start time used for clippedTotalTime
+	 * @param clipEndTime the clip end time used for clippedTotalTime
+	 */
+	protected TaskSummary(long id, String name, String description, boolean completed, Date firstTime, Date lastTime, Duration totalTime, Duration clippedTotalTime, Date clipStartTime, Date clipEndTime) {
+		this.id = id;
+		this.name = name;
+		this.description = description;
+		this.completed = completed;
+		this.firstTime = firstTime;
+		this.lastTime = lastTime;
+		this.totalTime = totalTime;
+		this.clippedTotalTime = clippedTotalTime;
+		this.clipStartTime = clipStartTime;
+		this.clipEndTime = clipEndTime;
+	}
+
+	/**
+	 * Constructs a TaskSummary from a loaded Task entity. The time values are
+	 * computed from the task's TimeSegments; the clipped total time is not
+	 * limited.
+	 *
+	 * @param task the task entity
+	 */
+	public TaskSummary(Task task) {
+		this.id = task.getId();
+		this.name = task.getName();
+		this.description = task.getDescription();
+		this.completed = task.getCompleted();
+		Date taskFirstTime = null, taskLastTime = null;
+		for (TimeSegment timeSegment : task.getTimeSegments()) {
+			if (taskFirstTime == null || timeSegment.getStartTime().getTime() < taskFirstTime.getTime())
+				taskFirstTime = timeSegment.getStartTime();
+			if (taskLastTime == null || timeSegment.getEndTime().getTime() > taskLastTime.getTime())
+				taskLastTime = timeSegment.getEndTime();
+		}
+		this.firstTime = taskFirstTime;
+		this.lastTime = taskLastTime;
+		this.totalTime = task.getTotalTime();
+		this.clippedTotalTime = totalTime;
+		this.clipStartTime = null;
+		this.clipEndTime = null;
+		for (Map.Entry<CustomField, String> entry : task.getCustomFields().entrySet())
+			setCustomField(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Returns the task ID
+	 *
+	 * @return the task ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the task name
+	 *
+	 * @return the task name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the task description
+	 *
+	 * @return the task description
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Returns true if the task is completed
+	 *
+	 * @return true if the task is completed
+	 */
+	public boolean getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * Returns a custom field value
+	 *
+	 * @param field the custom field
+	 * @return the custom field value
+	 */
+	public String getCustomField(CustomField field) {
+		return customFields.get(field);
+	}
+
+	/**
+	 * Sets a custom field value (used while loading the summary)
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value
+	 */
+	protected void setCustomField(CustomField customField, String value) {
+		if (value != null)
+			customFields.put(customField, value);
+	}
+
+	/**
+	 * Returns the earliest start time of all TimeSegments
+	 *
+	 * @return the earliest start time of all TimeSegments, or null if task has
+	 * no TimeSegments
+	 */
+	public Date getFirstTime() {
+		return firstTime;
+	}
+
+	/**
+	 * Returns the latest end time of all TimeSegments
+	 *
+	 * @return the latest end time of all TimeSegments, or null if task has no
+	 * TimeSegments
+	 */
+	public Date getLastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * Returns the total time of all TimeSegments
+	 *
+	 * @return the total time of all TimeSegments
+	 */
+	public Duration getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Returns the total time of all TimeSegments, clipped by the clip times
+	 * used when this summary was loaded
+	 *
+	 * @return the clipped total time
+	 * @see #getClipStartTime()
+	 * @see #getClipEndTime()
+	 */
+	public Duration getClippedTotalTime() {
+		return clippedTotalTime;
+	}
+
+	/**
+	 * Returns the clip start time used for the clipped total time
+	 *
+	 * @return the clip start time (or null if not limited)
+	 */
+	public Date getClipStartTime() {
+		return clipStartTime;
+	}
+
+	/**
+	 * Returns the clip end time used for the clipped total time
+	 *
+	 * @return the clip end time (or null if not limited)
+	 */
+	public Date getClipEndTime() {
+		return clipEndTime;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof TaskSummary && id == ((TaskSummary) obj).id;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 3;
+		hash = 37 * hash + (int) (this.id ^ (this.id >>> 32));
+		return hash;
+	}
+}
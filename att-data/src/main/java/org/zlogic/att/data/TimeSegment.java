@@ -15,7 +15,10 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
@@ -27,6 +30,9 @@ import javax.persistence.TemporalType;
  * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
  */
 @Entity
+@Table(indexes = {
+	@Index(name = "TimeSegment_owner_times", columnList = "owner_id, startTime, endTime"),
+	@Index(name = "TimeSegment_endTime_startTime", columnList = "endTime, startTime")})
 public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 
 	/**
@@ -37,7 +43,8 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 	 * JPA ID
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.SEQUENCE)
+	@SequenceGenerator(name = "TimeSegmentSequence", sequenceName = "hibernate_sequence", allocationSize = PersistenceHelper.ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TimeSegmentSequence")
 	private long id;
 	/**
 	 * The start time
@@ -87,6 +94,7 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 		if (endTime.before(startTime))
 			throw new java.lang.IllegalArgumentException(messages.getString("START_TIME_CANNOT_BE_LATER_THAN_END_TIME"));
 		this.startTime = startTime;
+		markOwnerModified();
 	}
 
 	/**
@@ -107,6 +115,7 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 		if (endTime.before(startTime))
 			throw new java.lang.IllegalArgumentException(messages.getString("END_TIME_CANNOT_BE_EARLIER_THAN_START_TIME"));
 		this.endTime = endTime;
+		markOwnerModified();
 	}
 
 	/**
@@ -120,6 +129,7 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 			throw new java.lang.IllegalArgumentException(messages.getString("START_TIME_CANNOT_BE_LATER_THAN_END_TIME"));
 		this.startTime = startTime;
 		this.endTime = endTime;
+		markOwnerModified();
 	}
 
 	/**
@@ -138,6 +148,7 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 	 */
 	public void setDescription(String description) {
 		this.description = description;
+		markOwnerModified();
 	}
 
 	/**
@@ -173,6 +184,15 @@ public class TimeSegment implements Serializable, Comparable<TimeSegment> {
 		return id;
 	}
 
+	/**
+	 * Marks the owner task as modified, so that a new change number is
+	 * assigned to it when the transaction is committed
+	 */
+	private void markOwnerModified() {
+		if (owner != null)
+			owner.markModified();
+	}
+
 	/**
 	 * Returns the calculated time segment duration
 	 *
@@ -26,7 +26,6 @@ import org.xml.sax.SAXException;
 import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.PersistenceHelper;
 import org.zlogic.att.data.Task;
-import org.zlogic.att.data.TimeSegment;
 
 /**
  * Importer of Grindstone 3 data exported with SQL Compact Command Line Tool
@@ -37,6 +36,12 @@ import org.zlogic.att.data.TimeSegment;
  */
 public class GrindstoneImporter implements Importer {
 
+	/**
+	 * Number of imported time segments after which the EntityManager is
+	 * flushed and cleared (after the current task's time segments are
+	 * imported)
+	 */
+	private static final int FLUSH_BATCH_SIZE = 500;
 	/**
 	 * File to be imported
 	 */
@@ -155,15 +160,34 @@ public class GrindstoneImporter implements Importer {
 				task.setCustomField(customField, entry.get("Value")); //NOI18N
 			}
 
-			//Parse timeslots
+			//Group timeslots by task, so that every task only needs to be loaded once
+			Map<String, List<Map<String, String>>> taskTimes = new TreeMap<>();
 			for (Map<String, String> entry : tables.get("Times")) { //NOI18N
-				Task task = tasks.get(entry.get("TaskId")); //NOI18N
-				if (task == null)
+				String taskId = entry.get("TaskId"); //NOI18N
+				if (!tasks.containsKey(taskId))
 					throw new ImportException(messages.getString("CANNOT_MATCH_TIME_WITH_TASK"));
-				TimeSegment timeSegment = persistenceHelper.createTimeSegment(entityManager, task);
-				timeSegment.setStartTime(DatatypeConverter.parseDateTime(entry.get("Start")).getTime()); //NOI18N
-				timeSegment.setEndTime(DatatypeConverter.parseDateTime(entry.get("End")).getTime()); //NOI18N
-				timeSegment.setDescription(entry.get("Notes")); //NOI18N
+				if (!taskTimes.containsKey(taskId))
+					taskTimes.put(taskId, new LinkedList<Map<String, String>>());
+				taskTimes.get(taskId).add(entry);
+			}
+
+			//Parse timeslots
+			int unflushedTimeSegments = 0;
+			for (Map.Entry<String, List<Map<String, String>>> taskTimesEntry : taskTimes.entrySet()) {
+				Task task = tasks.get(taskTimesEntry.getKey());
+				for (Map<String, String> entry : taskTimesEntry.getValue())
+					persistenceHelper.createTimeSegment(entityManager, task,
+							DatatypeConverter.parseDateTime(entry.get("Start")).getTime(), //NOI18N
+							DatatypeConverter.parseDateTime(entry.get("End")).getTime(), //NOI18N
+							entry.get("Notes")); //NOI18N
+				//Flush and clear periodically, only after all time segments of a task are added
+				//(createTimeSegment finds a detached task by its ID, loading all of its time segments)
+				unflushedTimeSegments += taskTimesEntry.getValue().size();
+				if (unflushedTimeSegments >= FLUSH_BATCH_SIZE) {
+					entityManager.flush();
+					entityManager.clear();
+					unflushedTimeSegments = 0;
+				}
 			}
 		} catch (SAXException | IOException | ParserConfigurationException ex) {
 			Logger.getLogger(GrindstoneImporter.class.getName()).log(Level.SEVERE, null, ex);
@@ -5,37 +5,42 @@
  */
 package org.zlogic.att.data.converters;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.PersistenceHelper;
 import org.zlogic.att.data.Task;
 import org.zlogic.att.data.TimeSegment;
 
 /**
- * Exporter of data to XML files
+ * Exporter of data to XML files. Tasks are read in pages and written directly
+ * to the output stream, so memory usage doesn't depend on the amount of data.
  *
  * @author Dmitry Zolotukhin <a
  * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
  */
 public class XmlExporter implements Exporter {
 
+	/**
+	 * Number of tasks read from the database in one page
+	 */
+	private static final int TASKS_PAGE_SIZE = 100;
+	/**
+	 * Output buffer size
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 	/**
 	 * The output XML file
 	 */
@@ -59,86 +64,122 @@ public class XmlExporter implements Exporter {
 	 */
 	@Override
 	public void exportData(PersistenceHelper persistenceHelper) throws ExportException {
-		try {
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder;
-			docBuilder = docFactory.newDocumentBuilder();
+		XMLStreamWriter writer = null;
+		try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()), OUTPUT_BUFFER_SIZE)) {
+			writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8"); //NOI18N
+			writer.writeStartDocument("UTF-8", "1.0"); //NOI18N
 
 			// Top element (FinanceData)
-			Document doc = docBuilder.newDocument();
-			Element rootElement = doc.createElement("AwesomeTimeTracker"); //NOI18N
-			doc.appendChild(rootElement);
+			writeIndent(writer, 0);
+			writer.writeStartElement("AwesomeTimeTracker"); //NOI18N
 
 			//CustomFields node
-			Element customFieldsElement = doc.createElement("CustomFields"); //NOI18N
-			rootElement.appendChild(customFieldsElement);
-
-			//Tasks node
-			Element tasksElement = doc.createElement("Tasks"); //NOI18N
-			rootElement.appendChild(tasksElement);
-
-			//Custom fields list
 			List<CustomField> customFields = persistenceHelper.getCustomFields();
+			writeIndent(writer, 1);
+			writer.writeStartElement("CustomFields"); //NOI18N
 			for (CustomField customField : customFields) {
-				Element customFieldElement = doc.createElement("CustomField"); //NOI18N
-				customFieldElement.setAttribute("Id", Long.toString(customField.getId())); //NOI18N
-				customFieldElement.setAttribute("Name", customField.getName()); //NOI18N
-				customFieldsElement.appendChild(customFieldElement);
+				writeIndent(writer, 2);
+				writer.writeEmptyElement("CustomField"); //NOI18N
+				writer.writeAttribute("Id", Long.toString(customField.getId())); //NOI18N
+				writer.writeAttribute("Name", customField.getName()); //NOI18N
 			}
+			writeIndent(writer, 1);
+			writer.writeEndElement();
 
-			//Tasks list
+			//Tasks node
+			writeIndent(writer, 1);
+			writer.writeStartElement("Tasks"); //NOI18N
 			DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
-			for (Task task : persistenceHelper.getAllTasks(false)) {
-				Element taskElement = doc.createElement("Task"); //NOI18N
-				taskElement.setAttribute("Id", Long.toString(task.getId())); //NOI18N
-				if (task.getName() != null)
-					taskElement.setAttribute("Name", task.getName()); //NOI18N
-				if (task.getDescription() != null)
-					taskElement.setAttribute("Description", task.getDescription()); //NOI18N
-				taskElement.setAttribute("Completed", Boolean.toString(task.getCompleted())); //NOI18N
-
-				//Tags list
-				for (CustomField customField : customFields) {
-					String customFieldValue = task.getCustomField(customField);
-					if (customFieldValue == null)
-						continue;
-					Element customFieldElement = doc.createElement("CustomField"); //NOI18N
-					customFieldElement.setAttribute("Id", Long.toString(customField.getId())); //NOI18N
-					customFieldElement.setAttribute("Value", customFieldValue); //NOI18N
-					taskElement.appendChild(customFieldElement);
+			Long lastTaskId = null;
+			for (List<Task> tasks = persistenceHelper.getTasksPage(lastTaskId, TASKS_PAGE_SIZE); !tasks.isEmpty(); tasks = persistenceHelper.getTasksPage(lastTaskId, TASKS_PAGE_SIZE)) {
+				for (Task task : tasks) {
+					writeTask(writer, task, customFields, datatypeFactory);
+					lastTaskId = task.getId();
 				}
-				//Transaction components list
-				for (TimeSegment timeSegment : task.getTimeSegments()) {
-					Element timeSegmentElement = doc.createElement("TimeSegment"); //NOI18N
-					timeSegmentElement.setAttribute("Id", Long.toString(timeSegment.getId())); //NOI18N
-					if (timeSegment.getStartTime() != null) {
-						GregorianCalendar startTimeCalendar = new GregorianCalendar();
-						startTimeCalendar.setTime(timeSegment.getStartTime());
-						timeSegmentElement.setAttribute("StartTime", datatypeFactory.newXMLGregorianCalendar(startTimeCalendar).toXMLFormat()); //NOI18N
-					}
-					if (timeSegment.getEndTime() != null) {
-						GregorianCalendar endTimeCalendar = new GregorianCalendar();
-						endTimeCalendar.setTime(timeSegment.getEndTime());
-						timeSegmentElement.setAttribute("EndTime", datatypeFactory.newXMLGregorianCalendar(endTimeCalendar).toXMLFormat()); //NOI18N
-					}
-					if (timeSegment.getDescription() != null)
-						timeSegmentElement.setAttribute("Description", timeSegment.getDescription()); //NOI18N
-					taskElement.appendChild(timeSegmentElement);
-				}
-				tasksElement.appendChild(taskElement);
 			}
+			writeIndent(writer, 1);
+			writer.writeEndElement();
 
-			// Write the content into XML file
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //NOI18N
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(outputFile);
-
-			transformer.transform(source, result);
-		} catch (DatatypeConfigurationException | ParserConfigurationException | TransformerException e) {
+			writeIndent(writer, 0);
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+		} catch (DatatypeConfigurationException | XMLStreamException | IOException e) {
 			Logger.getLogger(XmlExporter.class.getName()).log(Level.SEVERE, null, e);
 			throw new ExportException(e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (XMLStreamException e) {
+					Logger.getLogger(XmlExporter.class.getName()).log(Level.SEVERE, null, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a Task element along with its custom fields and time segments
+	 *
+	 * @param writer the XML writer
+	 * @param task the task to write
+	 * @param customFields all custom fields
+	 * @param datatypeFactory the DatatypeFactory used to format dates
+	 * @throws XMLStreamException if the XML cannot be written
+	 */
+	private void writeTask(XMLStreamWriter writer, Task task, List<CustomField> customFields, DatatypeFactory datatypeFactory) throws XMLStreamException {
+		writeIndent(writer, 2);
+		writer.writeStartElement("Task"); //NOI18N
+		writer.writeAttribute("Id", Long.toString(task.getId())); //NOI18N
+		if (task.getName() != null)
+			writer.writeAttribute("Name", task.getName()); //NOI18N
+		if (task.getDescription() != null)
+			writer.writeAttribute("Description", task.getDescription()); //NOI18N
+		writer.writeAttribute("Completed", Boolean.toString(task.getCompleted())); //NOI18N
+
+		//Tags list
+		for (CustomField customField : customFields) {
+			String customFieldValue = task.getCustomField(customField);
+			if (customFieldValue == null)
+				continue;
+			writeIndent(writer, 3);
+			writer.writeEmptyElement("CustomField"); //NOI18N
+			writer.writeAttribute("Id", Long.toString(customField.getId())); //NOI18N
+			writer.writeAttribute("Value", customFieldValue); //NOI18N
+		}
+		//Transaction components list
+		for (TimeSegment timeSegment : task.getTimeSegments()) {
+			writeIndent(writer, 3);
+			writer.writeEmptyElement("TimeSegment"); //NOI18N
+			writer.writeAttribute("Id", Long.toString(timeSegment.getId())); //NOI18N
+			if (timeSegment.getStartTime() != null) {
+				GregorianCalendar startTimeCalendar = new GregorianCalendar();
+				startTimeCalendar.setTime(timeSegment.getStartTime());
+				writer.writeAttribute("StartTime", datatypeFactory.newXMLGregorianCalendar(startTimeCalendar).toXMLFormat()); //NOI18N
+			}
+			if (timeSegment.getEndTime() != null) {
+				GregorianCalendar endTimeCalendar = new GregorianCalendar();
+				endTimeCalendar.setTime(timeSegment.getEndTime());
+				writer.writeAttribute("EndTime", datatypeFactory.newXMLGregorianCalendar(endTimeCalendar).toXMLFormat()); //NOI18N
+			}
+			if (timeSegment.getDescription() != null)
+				writer.writeAttribute("Description", timeSegment.getDescription()); //NOI18N
 		}
+		writeIndent(writer, 2);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Starts a new indented line
+	 *
+	 * @param writer the XML writer
+	 * @param level the indentation level
+	 * @throws XMLStreamException if the XML cannot be written
+	 */
+	private void writeIndent(XMLStreamWriter writer, int level) throws XMLStreamException {
+		StringBuilder indent = new StringBuilder("\n"); //NOI18N
+		for (int i = 0; i < level; i++)
+			indent.append('\t');
+		writer.writeCharacters(indent.toString());
 	}
 }
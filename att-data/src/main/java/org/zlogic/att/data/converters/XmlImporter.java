@@ -5,9 +5,12 @@
  */
 package org.zlogic.att.data.converters;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.MessageFormat;
 import java.util.Date;
 import java.util.Map;
@@ -22,32 +25,40 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.CustomField_;
 import org.zlogic.att.data.PersistenceHelper;
 import org.zlogic.att.data.Task;
-import org.zlogic.att.data.TimeSegment;
 
 /**
- * Importer of files exported by Awesome Time Tracker
+ * Importer of files exported by Awesome Time Tracker. The file is read as a
+ * stream, and the EntityManager is flushed and cleared after a task is
+ * imported if at least FLUSH_BATCH_SIZE entities were imported since the last
+ * flush, so memory usage only depends on the size of the largest task and not
+ * on the file size.
  *
  * @author Dmitry Zolotukhin <a
  * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
  */
 public class XmlImporter implements Importer {
 
+	/**
+	 * Number of imported entities after which the EntityManager is flushed and
+	 * cleared (after the current task is imported)
+	 */
+	private static final int FLUSH_BATCH_SIZE = 500;
 	/**
 	 * File to be imported
 	 */
 	private File importFile;
+	/**
+	 * Number of entities imported since the last flush
+	 */
+	private int unflushedEntities;
 	/**
 	 * The logger
 	 */
@@ -69,124 +80,36 @@ public class XmlImporter implements Importer {
 	@Override
 	public void importData(PersistenceHelper persistenceHelper, EntityManager entityManager) {
 		log.log(Level.FINER, messages.getString("IMPORTING_FILE"), importFile.toString());
-		try {
+		unflushedEntities = 0;
+		XMLStreamReader reader = null;
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(importFile))) {
 			//Read XML
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.parse(importFile);
-			doc.getDocumentElement().normalize();
+			XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			reader = inputFactory.createXMLStreamReader(inputStream);
 
 			//Get root node
-			Node rootNode = doc.getFirstChild();
-			if (rootNode == null || !rootNode.getNodeName().equals("AwesomeTimeTracker")) //NOI18N
+			if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("AwesomeTimeTracker")) //NOI18N
 				throw new ImportException(messages.getString("CANNOT_FIND_ROOT_XML_ELEMENT"));
 
-			//Iterate through root children
-			Node customFieldsNode = null, tasksNode = null;
-			for (Node currentNode = rootNode.getFirstChild(); currentNode != null; currentNode = currentNode.getNextSibling()) {
-				if (currentNode.getNodeName().equals("CustomFields")) //NOI18N
-					customFieldsNode = currentNode;
-				else if (currentNode.getNodeName().equals("Tasks")) //NOI18N
-					tasksNode = currentNode;
-				else if (currentNode.getNodeType() != Node.TEXT_NODE)
-					Logger.getLogger(XmlImporter.class.getName()).log(Level.WARNING, MessageFormat.format(messages.getString("UNRECOGNIZED_NODE"), currentNode.getNodeName()));
-			}
+			//Map of custom field IDs in XML to imported custom field IDs
+			Map<Long, Long> customFieldsMap = new TreeMap<>();
 
-			//Maps to store results
-			Map<Long, CustomField> customFieldsMap = new TreeMap<>();
-			Map<Long, Task> tasksMap = new TreeMap<>();
-
-			//Process custom fields
-			for (Node currentNode = customFieldsNode.getFirstChild(); currentNode != null; currentNode = currentNode.getNextSibling()) {
-				if (currentNode.getNodeType() != Node.ELEMENT_NODE)
-					continue;
-
-				//Extract attributes from XML
-				NamedNodeMap attributes = currentNode.getAttributes();
-				String customFieldName = attributes.getNamedItem("Name").getNodeValue(); //NOI18N
-				long customFieldId = Long.parseLong(attributes.getNamedItem("Id").getNodeValue()); //NOI18N
-
-				//Search existing custom fields in DB
-				CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-				CriteriaQuery<CustomField> customFieldsCriteriaQuery = criteriaBuilder.createQuery(CustomField.class);
-				Root<CustomField> customFieldRoot = customFieldsCriteriaQuery.from(CustomField.class);
-				Predicate condition = criteriaBuilder.equal(customFieldRoot.get(CustomField_.name), customFieldName);
-				customFieldsCriteriaQuery.where(condition);
-				CustomField foundCustomField = null;
-				try {
-					foundCustomField = entityManager.createQuery(customFieldsCriteriaQuery).getSingleResult();
-				} catch (javax.persistence.NoResultException ex) {
-				}
-
-				//Match by custom field name
-				if (foundCustomField != null && foundCustomField.getName().equals(customFieldName)) {
-					customFieldsMap.put(customFieldId, foundCustomField);
-				} else {
-					CustomField customField = persistenceHelper.createCustomField(entityManager);
-					customField.setName(customFieldName);
-					customFieldsMap.put(customFieldId, customField);
-				}
-			}
-
-			//Process tasks
+			//Iterate through root children
 			DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
-			for (Node currentNode = tasksNode.getFirstChild(); currentNode != null; currentNode = currentNode.getNextSibling()) {
-				if (currentNode.getNodeType() != Node.ELEMENT_NODE)
-					continue;
-
-				//Extract attributes from XML
-				NamedNodeMap attributes = currentNode.getAttributes();
-				long taskId = Long.parseLong(attributes.getNamedItem("Id").getNodeValue()); //NOI18N
-				String taskName = (attributes.getNamedItem("Name") != null) //NOI18N
-						? attributes.getNamedItem("Name").getNodeValue() //NOI18N
-						: null; //NOI18N
-				String taskDescription = (attributes.getNamedItem("Description") != null) //NOI18N
-						? attributes.getNamedItem("Description").getNodeValue() //NOI18N
-						: null; //NOI18N
-				Boolean taskCompleted = (attributes.getNamedItem("Completed") != null) //NOI18N
-						? Boolean.parseBoolean(attributes.getNamedItem("Completed").getNodeValue()) //NOI18N
-						: null; //NOI18N
-
-				Task task = persistenceHelper.createTask(entityManager);
-				task.setName(taskName);
-				task.setDescription(taskDescription);
-				task.setCompleted(taskCompleted);
-				tasksMap.put(taskId, task);
-
-				//Extract custom fields and time segments from XML
-				for (Node childNode = currentNode.getFirstChild(); childNode != null; childNode = childNode.getNextSibling()) {
-					if (childNode.getNodeType() != Node.ELEMENT_NODE)
-						continue;
-					switch (childNode.getNodeName()) {
-						case "CustomField":	//NOI18N
-							long customFieldId = Long.parseLong(childNode.getAttributes().getNamedItem("Id").getNodeValue()); //NOI18N
-							CustomField customField = customFieldsMap.get(customFieldId);
-							String customFieldValue = (childNode.getAttributes().getNamedItem("Value") != null) //NOI18N
-									? childNode.getAttributes().getNamedItem("Value").getNodeValue() //NOI18N
-									: null; //NOI18N
-							task.setCustomField(customField, customFieldValue);
-							break;
-						case "TimeSegment"://NOI18N
-							//long componentId = Long.parseLong(childNode.getAttributes().getNamedItem("Id").getNodeValue()); //NOI18N
-							String timeSegmentDescription = (childNode.getAttributes().getNamedItem("Description") != null) //NOI18N
-									? childNode.getAttributes().getNamedItem("Description").getNodeValue() //NOI18N
-									: null;
-							Date startTime = (childNode.getAttributes().getNamedItem("StartTime") != null) //NOI18N
-									? datatypeFactory.newXMLGregorianCalendar(childNode.getAttributes().getNamedItem("StartTime").getNodeValue()).toGregorianCalendar().getTime() //NOI18N
-									: null;
-							Date endTime = (childNode.getAttributes().getNamedItem("EndTime") != null) //NOI18N
-									? datatypeFactory.newXMLGregorianCalendar(childNode.getAttributes().getNamedItem("EndTime").getNodeValue()).toGregorianCalendar().getTime() //NOI18N
-									: null;
-
-							TimeSegment timeSegment = persistenceHelper.createTimeSegment(entityManager, task);
-							timeSegment.setStartTime(startTime);
-							timeSegment.setEndTime(endTime);
-							timeSegment.setDescription(timeSegmentDescription);
-							break;
-					}
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+					case "CustomFields": //NOI18N
+						importCustomFields(reader, persistenceHelper, entityManager, customFieldsMap);
+						break;
+					case "Tasks": //NOI18N
+						importTasks(reader, persistenceHelper, entityManager, customFieldsMap, datatypeFactory);
+						break;
+					default:
+						log.log(Level.WARNING, MessageFormat.format(messages.getString("UNRECOGNIZED_NODE"), reader.getLocalName()));
+						skipElement(reader);
 				}
 			}
-
 		} catch (DatatypeConfigurationException ex) {
 			Logger.getLogger(XmlImporter.class.getName()).log(Level.SEVERE, null, ex);
 			throw new ImportException(ex);
@@ -196,12 +119,177 @@ public class XmlImporter implements Importer {
 		} catch (IOException ex) {
 			Logger.getLogger(XmlImporter.class.getName()).log(Level.SEVERE, null, ex);
 			throw new ImportException(ex);
-		} catch (ParserConfigurationException | SAXException | DOMException ex) {
+		} catch (XMLStreamException ex) {
 			Logger.getLogger(XmlImporter.class.getName()).log(Level.SEVERE, null, ex);
 			throw new ImportException(ex);
-		} catch (NullPointerException ex) {
-			Logger.getLogger(XmlImporter.class.getName()).log(Level.SEVERE, null, ex);
-			throw new ImportException(messages.getString("MISSING_DATA_FROM_XML"), ex);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException ex) {
+					Logger.getLogger(XmlImporter.class.getName()).log(Level.SEVERE, null, ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Imports the contents of the CustomFields element. Existing custom fields
+	 * are matched by name.
+	 *
+	 * @param reader the XML reader, positioned at the CustomFields start
+	 * element
+	 * @param persistenceHelper the PersistenceHelper to be used for creating
+	 * custom fields
+	 * @param entityManager the EntityManager to be used for storing new items
+	 * @param customFieldsMap the map receiving custom field IDs (XML
+	 * ID=imported ID)
+	 * @throws XMLStreamException if the XML cannot be read
+	 */
+	private void importCustomFields(XMLStreamReader reader, PersistenceHelper persistenceHelper, EntityManager entityManager, Map<Long, Long> customFieldsMap) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			//Extract attributes from XML
+			String customFieldName = getRequiredAttribute(reader, "Name"); //NOI18N
+			long customFieldId = Long.parseLong(getRequiredAttribute(reader, "Id")); //NOI18N
+			skipElement(reader);
+
+			//Search existing custom fields in DB
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CriteriaQuery<CustomField> customFieldsCriteriaQuery = criteriaBuilder.createQuery(CustomField.class);
+			Root<CustomField> customFieldRoot = customFieldsCriteriaQuery.from(CustomField.class);
+			Predicate condition = criteriaBuilder.equal(customFieldRoot.get(CustomField_.name), customFieldName);
+			customFieldsCriteriaQuery.where(condition);
+			CustomField foundCustomField = null;
+			try {
+				foundCustomField = entityManager.createQuery(customFieldsCriteriaQuery).getSingleResult();
+			} catch (javax.persistence.NoResultException ex) {
+			}
+
+			//Match by custom field name
+			if (foundCustomField != null && foundCustomField.getName().equals(customFieldName)) {
+				customFieldsMap.put(customFieldId, foundCustomField.getId());
+			} else {
+				CustomField customField = persistenceHelper.createCustomField(entityManager);
+				customField.setName(customFieldName);
+				customFieldsMap.put(customFieldId, customField.getId());
+				unflushedEntities++;
+			}
+		}
+	}
+
+	/**
+	 * Imports the contents of the Tasks element, one Task at a time
+	 *
+	 * @param reader the XML reader, positioned at the Tasks start element
+	 * @param persistenceHelper the PersistenceHelper to be used for creating
+	 * tasks and time segments
+	 * @param entityManager the EntityManager to be used for storing new items
+	 * @param customFieldsMap the map of custom field IDs (XML ID=imported ID)
+	 * @param datatypeFactory the DatatypeFactory used to parse dates
+	 * @throws XMLStreamException if the XML cannot be read
+	 */
+	private void importTasks(XMLStreamReader reader, PersistenceHelper persistenceHelper, EntityManager entityManager, Map<Long, Long> customFieldsMap, DatatypeFactory datatypeFactory) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			//Extract attributes from XML
+			getRequiredAttribute(reader, "Id"); //NOI18N
+			String taskName = reader.getAttributeValue(null, "Name"); //NOI18N
+			String taskDescription = reader.getAttributeValue(null, "Description"); //NOI18N
+			Boolean taskCompleted = (reader.getAttributeValue(null, "Completed") != null) //NOI18N
+					? Boolean.parseBoolean(reader.getAttributeValue(null, "Completed")) //NOI18N
+					: null; //NOI18N
+
+			Task task = persistenceHelper.createTask(entityManager);
+			task.setName(taskName);
+			task.setDescription(taskDescription);
+			task.setCompleted(taskCompleted);
+			unflushedEntities++;
+
+			//Extract custom fields and time segments from XML
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				switch (reader.getLocalName()) {
+					case "CustomField": //NOI18N
+						Long customFieldId = customFieldsMap.get(Long.parseLong(getRequiredAttribute(reader, "Id"))); //NOI18N
+						if (customFieldId == null)
+							throw new ImportException(messages.getString("MISSING_DATA_FROM_XML"));
+						CustomField customField = entityManager.find(CustomField.class, customFieldId);
+						String customFieldValue = reader.getAttributeValue(null, "Value"); //NOI18N
+						task.setCustomField(customField, customFieldValue);
+						break;
+					case "TimeSegment"://NOI18N
+						String timeSegmentDescription = reader.getAttributeValue(null, "Description"); //NOI18N
+						Date startTime = getDateAttribute(reader, "StartTime", datatypeFactory); //NOI18N
+						Date endTime = getDateAttribute(reader, "EndTime", datatypeFactory); //NOI18N
+
+						persistenceHelper.createTimeSegment(entityManager, task, startTime, endTime, timeSegmentDescription);
+						unflushedEntities++;
+						break;
+					default:
+						log.log(Level.WARNING, MessageFormat.format(messages.getString("UNRECOGNIZED_NODE"), reader.getLocalName()));
+				}
+				skipElement(reader);
+			}
+			//Clear only between tasks, a detached task would be reloaded with all of its time segments
+			flushBatch(entityManager);
+		}
+	}
+
+	/**
+	 * Flushes and clears the EntityManager if enough entities were imported
+	 * since the last flush
+	 *
+	 * @param entityManager the EntityManager to flush
+	 */
+	private void flushBatch(EntityManager entityManager) {
+		if (unflushedEntities < FLUSH_BATCH_SIZE)
+			return;
+		entityManager.flush();
+		entityManager.clear();
+		unflushedEntities = 0;
+	}
+
+	/**
+	 * Skips the remaining contents of the current element, including its end
+	 * element
+	 *
+	 * @param reader the XML reader, positioned at a start element
+	 * @throws XMLStreamException if the XML cannot be read
+	 */
+	private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
 		}
 	}
+
+	/**
+	 * Returns the value of an attribute which should be present
+	 *
+	 * @param reader the XML reader, positioned at a start element
+	 * @param name the attribute name
+	 * @return the attribute value
+	 * @throws ImportException if the attribute is missing
+	 */
+	private String getRequiredAttribute(XMLStreamReader reader, String name) throws ImportException {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null)
+			throw new ImportException(messages.getString("MISSING_DATA_FROM_XML"));
+		return value;
+	}
+
+	/**
+	 * Returns the value of a date attribute which should be present
+	 *
+	 * @param reader the XML reader, positioned at a start element
+	 * @param name the attribute name
+	 * @param datatypeFactory the DatatypeFactory used to parse the date
+	 * @return the attribute value
+	 * @throws ImportException if the attribute is missing
+	 */
+	private Date getDateAttribute(XMLStreamReader reader, String name, DatatypeFactory datatypeFactory) throws ImportException {
+		return datatypeFactory.newXMLGregorianCalendar(getRequiredAttribute(reader, name)).toGregorianCalendar().getTime();
+	}
 }
@@ -0,0 +1,73 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data.reporting;
+
+import java.time.Duration;
+import org.zlogic.att.data.CustomField;
+
+/**
+ * Read-only result of the custom field aggregation: a custom field value and
+ * the total time of all tasks having this value, clipped by the report dates.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueTime {
+
+	/**
+	 * The custom field
+	 */
+	private final CustomField customField;
+	/**
+	 * The custom field value (an empty string if tasks have no value)
+	 */
+	private final String value;
+	/**
+	 * The total time of tasks having this value, clipped by the report dates
+	 */
+	private final Duration totalTime;
+
+	/**
+	 * Constructs a CustomFieldValueTime
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value
+	 * @param totalTime the clipped total time of tasks having this value
+	 */
+	protected CustomFieldValueTime(CustomField customField, String value, Duration totalTime) {
+		this.customField = customField;
+		this.value = value;
+		this.totalTime = totalTime;
+	}
+
+	/**
+	 * Returns the custom field
+	 *
+	 * @return the custom field
+	 */
+	public CustomField getCustomField() {
+		return customField;
+	}
+
+	/**
+	 * Returns the custom field value (an empty string if tasks have no value)
+	 *
+	 * @return the custom field value
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the total time of tasks having this value, clipped by the report
+	 * dates
+	 *
+	 * @return the clipped total time
+	 */
+	public Duration getTotalTime() {
+		return totalTime;
+	}
+}
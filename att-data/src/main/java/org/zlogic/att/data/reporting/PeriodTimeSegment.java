@@ -0,0 +1,119 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data.reporting;
+
+import java.time.Duration;
+import java.util.Date;
+import org.zlogic.att.data.TimeSegment;
+
+/**
+ * Part of a time segment which belongs to a single report period (e.g. a
+ * day), created by TimeSegmentSplitter. The clipped times and duration are
+ * computed once when the time segment is split.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class PeriodTimeSegment {
+
+	/**
+	 * The period start time
+	 */
+	private final Date periodStart;
+	/**
+	 * The period end time
+	 */
+	private final Date periodEnd;
+	/**
+	 * The time segment
+	 */
+	private final TimeSegment timeSegment;
+	/**
+	 * The time segment's start time, clipped by the period
+	 */
+	private final Date clippedStartTime;
+	/**
+	 * The time segment's end time, clipped by the period
+	 */
+	private final Date clippedEndTime;
+	/**
+	 * The time segment's duration, clipped by the period
+	 */
+	private final Duration clippedDuration;
+
+	/**
+	 * Constructs a PeriodTimeSegment
+	 *
+	 * @param periodStart the period start time
+	 * @param periodEnd the period end time
+	 * @param timeSegment the time segment
+	 * @param clippedStartTime the time segment's start time, clipped by the
+	 * period
+	 * @param clippedEndTime the time segment's end time, clipped by the period
+	 */
+	protected PeriodTimeSegment(Date periodStart, Date periodEnd, TimeSegment timeSegment, Date clippedStartTime, Date clippedEndTime) {
+		this.periodStart = periodStart;
+		this.periodEnd = periodEnd;
+		this.timeSegment = timeSegment;
+		this.clippedStartTime = clippedStartTime;
+		this.clippedEndTime = clippedEndTime;
+		this.clippedDuration = Duration.ofMillis(clippedEndTime.getTime() - clippedStartTime.getTime());
+	}
+
+	/**
+	 * Returns the period start time
+	 *
+	 * @return the period start time
+	 */
+	public Date getPeriodStart() {
+		return periodStart;
+	}
+
+	/**
+	 * Returns the period end time
+	 *
+	 * @return the period end time
+	 */
+	public Date getPeriodEnd() {
+		return periodEnd;
+	}
+
+	/**
+	 * Returns the time segment
+	 *
+	 * @return the time segment
+	 */
+	public TimeSegment getTimeSegment() {
+		return timeSegment;
+	}
+
+	/**
+	 * Returns the time segment's start time, clipped by the period
+	 *
+	 * @return the clipped start time
+	 */
+	public Date getClippedStartTime() {
+		return clippedStartTime;
+	}
+
+	/**
+	 * Returns the time segment's end time, clipped by the period
+	 *
+	 * @return the clipped end time
+	 */
+	public Date getClippedEndTime() {
+		return clippedEndTime;
+	}
+
+	/**
+	 * Returns the time segment's duration, clipped by the period
+	 *
+	 * @return the clipped duration
+	 */
+	public Duration getClippedDuration() {
+		return clippedDuration;
+	}
+}
@@ -5,18 +5,30 @@
  */
 package org.zlogic.att.data.reporting;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.MapJoin;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import org.zlogic.att.data.CustomField;
+import org.zlogic.att.data.CustomField_;
 import org.zlogic.att.data.PersistenceHelper;
 import org.zlogic.att.data.Task;
+import org.zlogic.att.data.Task_;
 import org.zlogic.att.data.TimeSegment;
 import org.zlogic.att.data.TimeSegment_;
 import org.zlogic.att.data.TransactedChange;
@@ -94,10 +106,23 @@ public class ReportQuery {
 	 * @return the list of all tasks matching the criteria
 	 */
 	public List<Task> queryTasks() {
-		List<TimeSegment> timeSegments = queryTimeSegments();
+		return queryTasks(queryTimeSegments());
+	}
+
+	/**
+	 * Returns the list of all tasks owning the time segments (without
+	 * querying the time segments again)
+	 *
+	 * @param timeSegments the time segments returned by queryTimeSegments
+	 * @return the list of all tasks owning timeSegments, in the order in which
+	 * they first appear in timeSegments (queryTimeSegments doesn't sort the
+	 * time segments, so this order is not chronological)
+	 */
+	public List<Task> queryTasks(List<TimeSegment> timeSegments) {
+		Set<Task> addedTasks = new HashSet<>();
 		List<Task> tasks = new LinkedList<>();
 		for (TimeSegment timeSegment : timeSegments)
-			if (!tasks.contains(timeSegment.getOwner()))
+			if (addedTasks.add(timeSegment.getOwner()))
 				tasks.add(timeSegment.getOwner());
 		return tasks;
 	}
@@ -123,31 +148,159 @@ public class ReportQuery {
 				CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 				CriteriaQuery<TimeSegment> timeSegmentsCriteriaQuery = criteriaBuilder.createQuery(TimeSegment.class);
 				Root<TimeSegment> timeSegmentRoot = timeSegmentsCriteriaQuery.from(TimeSegment.class);
-				Predicate datePredicate = criteriaBuilder.conjunction();
-				Expression<Date> startTime = timeSegmentRoot.get(TimeSegment_.startTime);
-				Expression<Date> endTime = timeSegmentRoot.get(TimeSegment_.endTime);
-				if (getStartDate() != null)
-					datePredicate
-							= criteriaBuilder.and(
-									criteriaBuilder.or(
-											(getEndDate() != null) ? criteriaBuilder.between(startTime, getStartDate(), getEndDate()) : criteriaBuilder.greaterThanOrEqualTo(startTime, getStartDate()),
-											criteriaBuilder.between(criteriaBuilder.literal(getStartDate()), startTime, endTime)),
-									datePredicate);
-
-				if (getEndDate() != null)
-					datePredicate
-							= criteriaBuilder.and(
-									criteriaBuilder.or(
-											(getEndDate() != null) ? criteriaBuilder.between(endTime, getStartDate(), getEndDate()) : criteriaBuilder.lessThanOrEqualTo(endTime, getEndDate()),
-											criteriaBuilder.between(criteriaBuilder.literal(getEndDate()), startTime, endTime)),
-									datePredicate);
-				timeSegmentsCriteriaQuery.distinct(true);
-				timeSegmentsCriteriaQuery.where(datePredicate);
+				timeSegmentsCriteriaQuery.where(createDatePredicate(criteriaBuilder, timeSegmentRoot));
 
 				targetTimeSegments.addAll(entityManager.createQuery(timeSegmentsCriteriaQuery).getResultList());
 			}
 		}.setTargetTimeSegments(timeSegments);
-		persistenceHelper.performTransactedChange(retreiveTimeSegments);
+		persistenceHelper.performReadOnlyQuery(retreiveTimeSegments);
 		return timeSegments;
 	}
+
+	/**
+	 * Returns the total time of every custom field value, for all custom
+	 * fields. Every time segment overlapping the report range adds its
+	 * duration (clipped by the report dates) to its task's value of every
+	 * custom field; tasks without a value are counted in the empty value.
+	 * The database sums the clipped durations grouped by (custom field,
+	 * value), joining time segments only with the values their tasks have.
+	 * The empty value gets the remainder of the total time of all tasks' time
+	 * segments in the report range. Useful when the tasks are not loaded;
+	 * reports which already loaded the tasks and time segments should sum the
+	 * task totals instead, which avoids another query.
+	 *
+	 * @return the total time of every custom field value, ordered by custom
+	 * field and value
+	 */
+	public List<CustomFieldValueTime> aggregateByCustomField() {
+		List<CustomFieldValueTime> result = new LinkedList<>();
+		//Perform query
+		TransactedChange aggregateCustomFields = new TransactedChange() {
+			private List<CustomFieldValueTime> targetResult;
+
+			public TransactedChange setTargetResult(List<CustomFieldValueTime> targetResult) {
+				this.targetResult = targetResult;
+				return this;
+			}
+
+			@Override
+			public void performChange(EntityManager entityManager) {
+				CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+				//Sum of the custom field values, custom field ID=key, {total time, time segments count} for every value
+				Map<Long, Map<String, long[]>> customFieldValueTimes = new TreeMap<>();
+				CriteriaQuery<Tuple> valuesCriteriaQuery = criteriaBuilder.createTupleQuery();
+				Root<Task> taskRoot = valuesCriteriaQuery.from(Task.class);
+				Root<CustomField> customFieldRoot = valuesCriteriaQuery.from(CustomField.class);
+				Join<Task, TimeSegment> timeSegmentRoot = taskRoot.join(Task_.timeSegments);
+				MapJoin<Task, CustomField, String> customFieldJoin = taskRoot.join(Task_.customFields);
+				customFieldJoin = customFieldJoin.on(criteriaBuilder.equal(customFieldJoin.key(), customFieldRoot));
+				Expression<Long> customFieldId = customFieldRoot.get(CustomField_.id);
+				valuesCriteriaQuery.multiselect(customFieldId, customFieldJoin.value(), criteriaBuilder.sum(getClippedDuration(criteriaBuilder, timeSegmentRoot)), criteriaBuilder.count(timeSegmentRoot));
+				valuesCriteriaQuery.where(createDatePredicate(criteriaBuilder, timeSegmentRoot));
+				valuesCriteriaQuery.groupBy(customFieldId, customFieldJoin.value());
+				for (Tuple entry : entityManager.createQuery(valuesCriteriaQuery).getResultList()) {
+					Map<String, long[]> valueTimes = customFieldValueTimes.get(entry.get(0, Long.class));
+					if (valueTimes == null) {
+						valueTimes = new TreeMap<>();
+						customFieldValueTimes.put(entry.get(0, Long.class), valueTimes);
+					}
+					addValueTime(valueTimes, entry.get(1, String.class), entry.get(2, Number.class), entry.get(3, Number.class));
+				}
+
+				//Total of all time segments owned by tasks, joined the same way as in the values query
+				CriteriaQuery<Tuple> totalCriteriaQuery = criteriaBuilder.createTupleQuery();
+				Root<Task> totalTaskRoot = totalCriteriaQuery.from(Task.class);
+				Join<Task, TimeSegment> totalTimeSegmentRoot = totalTaskRoot.join(Task_.timeSegments);
+				totalCriteriaQuery.multiselect(criteriaBuilder.sum(getClippedDuration(criteriaBuilder, totalTimeSegmentRoot)), criteriaBuilder.count(totalTimeSegmentRoot));
+				totalCriteriaQuery.where(createDatePredicate(criteriaBuilder, totalTimeSegmentRoot));
+				Tuple total = entityManager.createQuery(totalCriteriaQuery).getSingleResult();
+				Number totalTime = total.get(0, Number.class);
+				Number totalCount = total.get(1, Number.class);
+
+				//Time segments not counted for a custom field belong to tasks without a value
+				CriteriaQuery<CustomField> fieldsCriteriaQuery = criteriaBuilder.createQuery(CustomField.class);
+				fieldsCriteriaQuery.from(CustomField.class);
+				Map<CustomField, Map<String, long[]>> sortedCustomFieldValueTimes = new TreeMap<>();
+				for (CustomField customField : entityManager.createQuery(fieldsCriteriaQuery).getResultList()) {
+					Map<String, long[]> valueTimes = customFieldValueTimes.get(customField.getId());
+					if (valueTimes == null)
+						valueTimes = new TreeMap<>();
+					long emptyTime = totalTime != null ? totalTime.longValue() : 0;
+					long emptyCount = totalCount != null ? totalCount.longValue() : 0;
+					for (long[] valueTime : valueTimes.values()) {
+						emptyTime -= valueTime[0];
+						emptyCount -= valueTime[1];
+					}
+					if (emptyCount > 0)
+						addValueTime(valueTimes, "", emptyTime, emptyCount); //NOI18N
+					sortedCustomFieldValueTimes.put(customField, valueTimes);
+				}
+
+				for (Map.Entry<CustomField, Map<String, long[]>> customFieldEntry : sortedCustomFieldValueTimes.entrySet())
+					for (Map.Entry<String, long[]> valueEntry : customFieldEntry.getValue().entrySet())
+						targetResult.add(new CustomFieldValueTime(customFieldEntry.getKey(), valueEntry.getKey(), Duration.ofMillis(valueEntry.getValue()[0])));
+			}
+
+			/**
+			 * Adds a duration to a custom field value's total
+			 *
+			 * @param valueTimes the custom field's values
+			 * @param value the custom field value (or null for the empty
+			 * value)
+			 * @param duration the duration to add, in milliseconds (or null if
+			 * zero)
+			 * @param count the number of time segments to add
+			 */
+			private void addValueTime(Map<String, long[]> valueTimes, String value, Number duration, Number count) {
+				value = value != null ? value : ""; //NOI18N
+				long[] valueTime = valueTimes.get(value);
+				if (valueTime == null) {
+					valueTime = new long[2];
+					valueTimes.put(value, valueTime);
+				}
+				valueTime[0] += duration != null ? duration.longValue() : 0;
+				valueTime[1] += count != null ? count.longValue() : 0;
+			}
+		}.setTargetResult(result);
+		persistenceHelper.performReadOnlyQuery(aggregateCustomFields);
+		return result;
+	}
+
+	/**
+	 * Returns an expression computing a time segment's duration, clipped by
+	 * the report dates
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param timeSegmentRoot the time segment root of the query
+	 * @return the expression computing the clipped duration in milliseconds
+	 */
+	private Expression<Long> getClippedDuration(CriteriaBuilder criteriaBuilder, From<?, TimeSegment> timeSegmentRoot) {
+		return persistenceHelper.getClippedDurationMillis(
+				criteriaBuilder,
+				timeSegmentRoot.get(TimeSegment_.startTime),
+				timeSegmentRoot.get(TimeSegment_.endTime),
+				getStartDate(),
+				getEndDate());
+	}
+
+	/**
+	 * Creates the predicate selecting time segments which overlap the report
+	 * range. The (endTime, startTime) index serves both sides of the overlap
+	 * test, so the startTime condition is checked without reading the table.
+	 *
+	 * @param criteriaBuilder the CriteriaBuilder to use
+	 * @param timeSegmentRoot the time segment root of the query
+	 * @return the predicate selecting time segments which overlap the report
+	 * range
+	 */
+	private Predicate createDatePredicate(CriteriaBuilder criteriaBuilder, From<?, TimeSegment> timeSegmentRoot) {
+		Predicate datePredicate = criteriaBuilder.conjunction();
+		//Segment overlaps the report range
+		if (getEndDate() != null)
+			datePredicate = criteriaBuilder.and(datePredicate, criteriaBuilder.lessThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.startTime), getEndDate()));
+		if (getStartDate() != null)
+			datePredicate = criteriaBuilder.and(datePredicate, criteriaBuilder.greaterThanOrEqualTo(timeSegmentRoot.get(TimeSegment_.endTime), getStartDate()));
+		return datePredicate;
+	}
 }
@@ -0,0 +1,113 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data.reporting;
+
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ResourceBundle;
+import org.zlogic.att.data.TimeSegment;
+
+/**
+ * Splits time segments into report periods (days, weeks, months). Time
+ * segments are sorted by their start time once and then swept together with
+ * the period boundaries, so every time segment is only checked in the periods
+ * it overlaps.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class TimeSegmentSplitter {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/att/data/messages");
+	/**
+	 * The first period's start date
+	 */
+	private final LocalDate startDate;
+	/**
+	 * The last period's end date
+	 */
+	private final LocalDate endDate;
+	/**
+	 * The period length
+	 */
+	private final Period period;
+
+	/**
+	 * Constructs a TimeSegmentSplitter. Periods start at startDate; the last
+	 * period is cut at endDate.
+	 *
+	 * @param startDate the first period's start date
+	 * @param endDate the last period's end date
+	 * @param period the period length (e.g. one day, one week or one month)
+	 * @throws IllegalArgumentException if the period is zero or negative
+	 */
+	public TimeSegmentSplitter(LocalDate startDate, LocalDate endDate, Period period) {
+		if (period.isZero() || period.isNegative())
+			throw new java.lang.IllegalArgumentException(MessageFormat.format(messages.getString("REPORT_PERIOD_MUST_BE_POSITIVE"), period));
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.period = period;
+	}
+
+	/**
+	 * Splits time segments into periods. Only non-empty parts of time segments
+	 * are returned.
+	 *
+	 * @param timeSegments the time segments to split
+	 * @return the parts of time segments, ordered by period and time segment
+	 * start time
+	 */
+	public List<PeriodTimeSegment> split(Collection<TimeSegment> timeSegments) {
+		List<TimeSegment> sortedTimeSegments = new ArrayList<>(timeSegments);
+		Collections.sort(sortedTimeSegments, new Comparator<TimeSegment>() {
+			@Override
+			public int compare(TimeSegment timeSegment1, TimeSegment timeSegment2) {
+				return Long.compare(timeSegment1.getStartTime().getTime(), timeSegment2.getStartTime().getTime());
+			}
+		});
+
+		List<PeriodTimeSegment> result = new LinkedList<>();
+		//Time segments which started before the current period's end and could overlap it
+		List<TimeSegment> activeTimeSegments = new LinkedList<>();
+		int nextTimeSegment = 0;
+		for (int periodNumber = 0;; periodNumber++) {
+			LocalDate periodStartDate = startDate.plus(period.multipliedBy(periodNumber));
+			if (periodStartDate.isAfter(endDate))
+				break;
+			LocalDate nextPeriodStartDate = startDate.plus(period.multipliedBy(periodNumber + 1));
+			LocalDate periodEndDate = nextPeriodStartDate.minusDays(1).isAfter(endDate) ? endDate : nextPeriodStartDate.minusDays(1);
+			Date periodStart = DateTools.getInstance().convertDateToStartOfDay(periodStartDate);
+			Date periodEnd = DateTools.getInstance().convertDateToEndOfDay(periodEndDate);
+			long nextPeriodStartTime = DateTools.getInstance().convertDateToStartOfDay(nextPeriodStartDate).getTime();
+
+			while (nextTimeSegment < sortedTimeSegments.size() && sortedTimeSegments.get(nextTimeSegment).getStartTime().getTime() <= periodEnd.getTime())
+				activeTimeSegments.add(sortedTimeSegments.get(nextTimeSegment++));
+
+			for (Iterator<TimeSegment> it = activeTimeSegments.iterator(); it.hasNext();) {
+				TimeSegment timeSegment = it.next();
+				long clippedStartTime = Math.max(timeSegment.getStartTime().getTime(), periodStart.getTime());
+				long clippedEndTime = Math.min(timeSegment.getEndTime().getTime(), periodEnd.getTime());
+				if (clippedStartTime < clippedEndTime)
+					result.add(new PeriodTimeSegment(periodStart, periodEnd, timeSegment, new Date(clippedStartTime), new Date(clippedEndTime)));
+				if (timeSegment.getEndTime().getTime() <= nextPeriodStartTime)
+					it.remove();
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the PersistenceHelper asynchronous writer. Uses an in-memory
+ * database.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class PersistenceHelperTest {
+
+	/**
+	 * The PersistenceHelper being used
+	 */
+	private PersistenceHelper persistenceHelper;
+
+	/**
+	 * Creates the PersistenceHelper
+	 */
+	@Before
+	public void setUp() {
+		Map<String, String> properties = new TreeMap<>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:PersistenceHelperTest;DB_CLOSE_DELAY=-1"); //NOI18N
+		persistenceHelper = new PersistenceHelper(properties);
+	}
+
+	/**
+	 * Shuts down the PersistenceHelper
+	 */
+	@After
+	public void tearDown() {
+		if (persistenceHelper != null)
+			persistenceHelper.shutdown();
+	}
+
+	/**
+	 * Creates a change which adds a task
+	 *
+	 * @param name the task name
+	 * @return the change
+	 */
+	private TransactedChange createTaskChange(final String name) {
+		return new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				persistenceHelper.createTask(entityManager).setName(name);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of tasks in the database
+	 *
+	 * @return the number of tasks
+	 */
+	private int getTaskCount() {
+		final int[] taskCount = new int[1];
+		persistenceHelper.performReadOnlyQuery(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				taskCount[0] = persistenceHelper.getAllTasks(entityManager, false).size();
+			}
+		});
+		return taskCount[0];
+	}
+
+	/**
+	 * Tests that a change throwing an Error fails only its own future, and
+	 * that the writer keeps performing the other changes
+	 */
+	@Test
+	public void testChangeThrowingError() throws InterruptedException {
+		int initialTaskCount = getTaskCount();
+		CompletableFuture<Void> first = persistenceHelper.performTransactedChangeAsync(createTaskChange("First")); //NOI18N
+		CompletableFuture<Void> failing = persistenceHelper.performTransactedChangeAsync(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				throw new AssertionError("Failing change"); //NOI18N
+			}
+		});
+		CompletableFuture<Void> last = persistenceHelper.performTransactedChangeAsync(createTaskChange("Last")); //NOI18N
+		try {
+			failing.get();
+			fail("The failing change was committed"); //NOI18N
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof AssertionError);
+		}
+		first.join();
+		last.join();
+		persistenceHelper.performTransactedChange(createTaskChange("Synchronous")); //NOI18N
+		assertEquals(initialTaskCount + 3, getTaskCount());
+	}
+
+	/**
+	 * Tests that deleted tasks are returned only for change numbers before
+	 * their deletion
+	 */
+	@Test
+	public void testDeletedTaskIds() {
+		final Task task = persistenceHelper.createTask();
+		persistenceHelper.createTask();
+		long changeNumber = persistenceHelper.getChangeNumber();
+		assertTrue(persistenceHelper.getDeletedTaskIds(changeNumber).isEmpty());
+
+		persistenceHelper.performTransactedChange(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				persistenceHelper.deleteTask(entityManager, task);
+			}
+		});
+		assertEquals(new TreeSet<>(Arrays.asList(task.getId())), persistenceHelper.getDeletedTaskIds(changeNumber));
+		assertTrue(persistenceHelper.getDeletedTaskIds(persistenceHelper.getChangeNumber()).isEmpty());
+		assertTrue(persistenceHelper.getTaskIds(false, changeNumber).isEmpty());
+		assertFalse(persistenceHelper.getTaskIds(false, null).contains(task.getId()));
+	}
+
+	/**
+	 * Tests that changes submitted after the writer has stopped are rejected
+	 * instead of waiting forever
+	 */
+	@Test
+	public void testChangeAfterShutdown() throws InterruptedException {
+		persistenceHelper.performTransactedChangeAsync(createTaskChange("Task")).join(); //NOI18N
+		persistenceHelper.shutdown();
+		CompletableFuture<Void> rejected = persistenceHelper.performTransactedChangeAsync(createTaskChange("Rejected")); //NOI18N
+		try {
+			rejected.get();
+			fail("The change was accepted after shutdown"); //NOI18N
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof ApplicationShuttingDownException);
+		}
+		persistenceHelper = null;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data.reporting;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.zlogic.att.data.CustomField;
+import org.zlogic.att.data.PersistenceHelper;
+import org.zlogic.att.data.Task;
+import org.zlogic.att.data.TimeSegment;
+import org.zlogic.att.data.TransactedChange;
+
+/**
+ * Tests for the ReportQuery custom field aggregation. Uses an in-memory
+ * database.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class ReportQueryTest {
+
+	/**
+	 * One hour in milliseconds
+	 */
+	private static final long HOUR = 60 * 60 * 1000L;
+	/**
+	 * The report start date
+	 */
+	private static final LocalDate START_DATE = LocalDate.of(2016, 1, 10);
+	/**
+	 * The report end date
+	 */
+	private static final LocalDate END_DATE = LocalDate.of(2016, 1, 20);
+	/**
+	 * The PersistenceHelper being used
+	 */
+	private PersistenceHelper persistenceHelper;
+	/**
+	 * Expected total time of every custom field value, custom field name=key,
+	 * value=key of the inner map
+	 */
+	private Map<String, Map<String, Long>> expectedValueTimes;
+
+	/**
+	 * Creates random tasks, time segments and custom field values, and
+	 * computes the expected totals the same way the report model computes task
+	 * totals
+	 */
+	@Before
+	public void setUp() {
+		Map<String, String> properties = new TreeMap<>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:ReportQueryTest;DB_CLOSE_DELAY=-1"); //NOI18N
+		persistenceHelper = new PersistenceHelper(properties);
+		expectedValueTimes = new TreeMap<>();
+		persistenceHelper.performTransactedChange(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				Random random = new Random(1);
+				long rangeStart = DateTools.getInstance().convertDateToStartOfDay(START_DATE).getTime();
+				long rangeEnd = DateTools.getInstance().convertDateToEndOfDay(END_DATE).getTime();
+				List<CustomField> customFields = new ArrayList<>();
+				for (int i = 0; i < 3; i++) {
+					CustomField customField = persistenceHelper.createCustomField(entityManager);
+					customField.setName("Field " + i); //NOI18N
+					customFields.add(customField);
+					expectedValueTimes.put(customField.getName(), new TreeMap<String, Long>());
+				}
+				for (int i = 0; i < 100; i++) {
+					Task task = persistenceHelper.createTask(entityManager);
+					for (CustomField customField : customFields)
+						if (random.nextInt(4) != 0)
+							task.setCustomField(customField, "Value " + random.nextInt(4)); //NOI18N
+					long totalTime = 0;
+					boolean inRange = false;
+					for (int j = random.nextInt(4); j > 0; j--) {
+						long startTime = rangeStart - 3 * 24 * HOUR + random.nextInt(16 * 24) * HOUR;
+						long endTime = startTime + random.nextInt(30) * HOUR;
+						persistenceHelper.createTimeSegment(entityManager, task, new Date(startTime), new Date(endTime), ""); //NOI18N
+						if (startTime <= rangeEnd && endTime >= rangeStart) {
+							inRange = true;
+							totalTime += Math.min(endTime, rangeEnd) - Math.max(startTime, rangeStart);
+						}
+					}
+					if (!inRange)
+						continue;
+					for (CustomField customField : customFields) {
+						String value = task.getCustomField(customField) != null ? task.getCustomField(customField) : ""; //NOI18N
+						Map<String, Long> valueTimes = expectedValueTimes.get(customField.getName());
+						valueTimes.put(value, (valueTimes.containsKey(value) ? valueTimes.get(value) : 0L) + totalTime);
+					}
+				}
+			}
+		});
+		//Orphaned time segment in the report range, removed by cleanupDB and not counted in reports
+		persistenceHelper.performTransactedChange(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				Date startTime = DateTools.getInstance().convertDateToStartOfDay(START_DATE);
+				Task task = persistenceHelper.createTask(entityManager);
+				TimeSegment timeSegment = persistenceHelper.createTimeSegment(entityManager, task, startTime, new Date(startTime.getTime() + HOUR), ""); //NOI18N
+				entityManager.flush();
+				entityManager.createNativeQuery("DELETE FROM Task_TimeSegment WHERE timeSegments_id=?") //NOI18N
+						.setParameter(1, timeSegment.getId())
+						.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * Shuts down the PersistenceHelper
+	 */
+	@After
+	public void tearDown() {
+		if (persistenceHelper != null)
+			persistenceHelper.shutdown();
+	}
+
+	/**
+	 * Tests that the database aggregation matches the totals computed from
+	 * the tasks, and that the results are ordered by custom field and value
+	 */
+	@Test
+	public void testAggregateByCustomField() {
+		ReportQuery reportQuery = new ReportQuery(persistenceHelper);
+		reportQuery.setStartDate(START_DATE);
+		reportQuery.setEndDate(END_DATE);
+		Map<String, Map<String, Long>> valueTimes = new TreeMap<>();
+		CustomFieldValueTime previousValueTime = null;
+		for (CustomFieldValueTime valueTime : reportQuery.aggregateByCustomField()) {
+			if (previousValueTime != null) {
+				int compareFields = previousValueTime.getCustomField().compareTo(valueTime.getCustomField());
+				assertTrue(compareFields < 0 || (compareFields == 0 && previousValueTime.getValue().compareTo(valueTime.getValue()) < 0));
+			}
+			previousValueTime = valueTime;
+			if (!valueTimes.containsKey(valueTime.getCustomField().getName()))
+				valueTimes.put(valueTime.getCustomField().getName(), new TreeMap<String, Long>());
+			valueTimes.get(valueTime.getCustomField().getName()).put(valueTime.getValue(), valueTime.getTotalTime().toMillis());
+		}
+		assertEquals(expectedValueTimes, valueTimes);
+	}
+}
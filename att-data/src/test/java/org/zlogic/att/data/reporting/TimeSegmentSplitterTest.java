@@ -0,0 +1,159 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.data.reporting;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.zlogic.att.data.TimeSegment;
+
+/**
+ * Tests for the TimeSegmentSplitter
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class TimeSegmentSplitterTest {
+
+	/**
+	 * Creates a time segment which is not stored in the database
+	 *
+	 * @param startTime the start time
+	 * @param endTime the end time
+	 * @return the time segment
+	 */
+	private static TimeSegment createTimeSegment(LocalDateTime startTime, LocalDateTime endTime) {
+		TimeSegment timeSegment = new TimeSegment() {
+		};
+		timeSegment.setStartEndTime(Date.from(startTime.toInstant(ZoneOffset.UTC)), Date.from(endTime.toInstant(ZoneOffset.UTC)));
+		return timeSegment;
+	}
+
+	/**
+	 * Converts a date and time to a Date
+	 *
+	 * @param dateTime the date and time
+	 * @return the Date
+	 */
+	private static Date toDate(LocalDateTime dateTime) {
+		return Date.from(dateTime.toInstant(ZoneOffset.UTC));
+	}
+
+	/**
+	 * Tests that a time segment crossing midnight is split into days and that
+	 * time segments outside the range are ignored
+	 */
+	@Test
+	public void testSplitDays() {
+		TimeSegment overnight = createTimeSegment(LocalDateTime.of(2016, 1, 1, 23, 0), LocalDateTime.of(2016, 1, 2, 1, 0));
+		TimeSegment morning = createTimeSegment(LocalDateTime.of(2016, 1, 2, 0, 30), LocalDateTime.of(2016, 1, 2, 0, 45));
+		TimeSegment outside = createTimeSegment(LocalDateTime.of(2016, 1, 5, 10, 0), LocalDateTime.of(2016, 1, 5, 11, 0));
+
+		TimeSegmentSplitter splitter = new TimeSegmentSplitter(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 3), Period.ofDays(1));
+		List<PeriodTimeSegment> parts = splitter.split(Arrays.asList(morning, outside, overnight));
+		assertEquals(3, parts.size());
+
+		assertSame(overnight, parts.get(0).getTimeSegment());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 1, 0, 0)), parts.get(0).getPeriodStart());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 1, 23, 0)), parts.get(0).getClippedStartTime());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 1, 23, 59, 59)), parts.get(0).getClippedEndTime());
+
+		assertSame(overnight, parts.get(1).getTimeSegment());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 2, 0, 0)), parts.get(1).getPeriodStart());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 2, 0, 0)), parts.get(1).getClippedStartTime());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 2, 1, 0)), parts.get(1).getClippedEndTime());
+
+		assertSame(morning, parts.get(2).getTimeSegment());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 2, 0, 0)), parts.get(2).getPeriodStart());
+	}
+
+	/**
+	 * Tests that the last period is cut at the end date
+	 */
+	@Test
+	public void testLastPeriodCut() {
+		TimeSegment timeSegment = createTimeSegment(LocalDateTime.of(2016, 1, 9, 12, 0), LocalDateTime.of(2016, 1, 12, 12, 0));
+		TimeSegmentSplitter splitter = new TimeSegmentSplitter(LocalDate.of(2016, 1, 4), LocalDate.of(2016, 1, 13), Period.ofWeeks(1));
+		List<PeriodTimeSegment> parts = splitter.split(Arrays.asList(timeSegment));
+		assertEquals(2, parts.size());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 10, 23, 59, 59)), parts.get(0).getPeriodEnd());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 11, 0, 0)), parts.get(1).getPeriodStart());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 13, 23, 59, 59)), parts.get(1).getPeriodEnd());
+		assertEquals(toDate(LocalDateTime.of(2016, 1, 12, 12, 0)), parts.get(1).getClippedEndTime());
+	}
+
+	/**
+	 * Compares the split of random time segments with checking every time
+	 * segment in every period
+	 */
+	@Test
+	public void testRandomTimeSegments() {
+		Random random = new Random(1);
+		LocalDate startDate = LocalDate.of(2016, 1, 1);
+		LocalDate endDate = LocalDate.of(2016, 3, 31);
+		List<TimeSegment> timeSegments = new LinkedList<>();
+		for (int i = 0; i < 500; i++) {
+			LocalDateTime startTime = LocalDateTime.of(2015, 12, 20, 0, 0).plusMinutes(random.nextInt(120 * 24 * 60));
+			timeSegments.add(createTimeSegment(startTime, startTime.plusMinutes(random.nextInt(5 * 24 * 60))));
+		}
+		for (Period period : Arrays.asList(Period.ofDays(1), Period.ofWeeks(1), Period.ofMonths(1))) {
+			List<PeriodTimeSegment> parts = new TimeSegmentSplitter(startDate, endDate, period).split(timeSegments);
+
+			List<TimeSegment> sortedTimeSegments = new ArrayList<>(timeSegments);
+			Collections.sort(sortedTimeSegments, new Comparator<TimeSegment>() {
+				@Override
+				public int compare(TimeSegment timeSegment1, TimeSegment timeSegment2) {
+					return timeSegment1.getStartTime().compareTo(timeSegment2.getStartTime());
+				}
+			});
+			List<PeriodTimeSegment> expectedParts = new LinkedList<>();
+			for (LocalDate periodStartDate = startDate; !periodStartDate.isAfter(endDate); periodStartDate = periodStartDate.plus(period)) {
+				LocalDate periodEndDate = periodStartDate.plus(period).minusDays(1);
+				periodEndDate = periodEndDate.isAfter(endDate) ? endDate : periodEndDate;
+				Date periodStart = DateTools.getInstance().convertDateToStartOfDay(periodStartDate);
+				Date periodEnd = DateTools.getInstance().convertDateToEndOfDay(periodEndDate);
+				for (TimeSegment timeSegment : sortedTimeSegments) {
+					Date clippedStartTime = timeSegment.getClippedStartTime(periodStart, periodEnd);
+					Date clippedEndTime = timeSegment.getClippedEndTime(periodStart, periodEnd);
+					if (clippedStartTime != null && clippedStartTime.before(clippedEndTime))
+						expectedParts.add(new PeriodTimeSegment(periodStart, periodEnd, timeSegment, clippedStartTime, clippedEndTime));
+				}
+			}
+			assertFalse(expectedParts.isEmpty());
+			assertEquals(expectedParts.size(), parts.size());
+			for (int i = 0; i < parts.size(); i++) {
+				PeriodTimeSegment part = parts.get(i), expectedPart = expectedParts.get(i);
+				assertEquals(expectedPart.getPeriodStart(), part.getPeriodStart());
+				assertEquals(expectedPart.getPeriodEnd(), part.getPeriodEnd());
+				assertSame(expectedPart.getTimeSegment(), part.getTimeSegment());
+				assertEquals(expectedPart.getClippedStartTime(), part.getClippedStartTime());
+				assertEquals(expectedPart.getClippedEndTime(), part.getClippedEndTime());
+			}
+		}
+	}
+
+	/**
+	 * Tests that a zero period is rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroPeriod() {
+		new TimeSegmentSplitter(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 31), Period.ZERO);
+	}
+}
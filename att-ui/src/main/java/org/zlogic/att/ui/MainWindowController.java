@@ -15,6 +15,7 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.application.Platform;
@@ -356,7 +357,13 @@ public class MainWindowController {
 			@Override
 			public void changed(ObservableValue<? extends File> ov, File oldFile, File newFile) {
 				ConfigurationElement element = new ConfigurationElement("lastDirectory", newFile); //NOI18N
-				dataManager.getPersistenceHelper().mergeEntity(element);
+				dataManager.getPersistenceHelper().mergeEntityAsync(element).exceptionally(new Function<Throwable, Void>() {
+					@Override
+					public Void apply(Throwable ex) {
+						log.log(Level.SEVERE, messages.getString("CANNOT_SAVE_CONFIGURATION_ELEMENT"), ex);
+						return null;
+					}
+				});
 			}
 		});
 		ConfigurationElement lastDirectoryConfigurationElement = dataManager.getPersistenceHelper().getConfigurationElement("lastDirectory"); //NOI18N
@@ -956,7 +963,7 @@ public class MainWindowController {
 			for (CustomFieldAdapter customField : dataManager.getCustomFields()) {
 				CustomFieldValueAdapter customFieldValue = new CustomFieldValueAdapter(customField, dataManager);
 				customFieldValue.setTask(newTask);
-				customFieldValue.valueProperty().set(selectedTask.getTask().getCustomField(customField.getCustomField()));
+				customFieldValue.valueProperty().set(selectedTask.getCustomField(customField.getCustomField()));
 			}
 		}
 	}
@@ -1043,6 +1050,7 @@ public class MainWindowController {
 			else
 				log.fine(messages.getString("EXTENSION_NOT_RECOGNIZED"));
 
+			dataManager.invalidateCustomFieldValues();
 			dataManager.reloadCustomFields();
 			reloadTasks();
 		}
@@ -1099,6 +1107,7 @@ public class MainWindowController {
 					Platform.runLater(new Runnable() {
 						@Override
 						public void run() {
+							dataManager.invalidateCustomFieldValues();
 							dataManager.reloadCustomFields();
 							reloadTasks();
 							updateSortOrder();
@@ -6,7 +6,7 @@
 package org.zlogic.att.ui;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
@@ -29,6 +29,7 @@ import net.sf.dynamicreports.report.exception.DRException;
 import org.zlogic.att.data.reporting.DateTools;
 import org.zlogic.att.ui.adapters.DataManager;
 import org.zlogic.att.ui.report.Report;
+import org.zlogic.att.ui.report.ReportCache;
 
 /**
  * Controller for the report window
@@ -112,6 +113,10 @@ public class ReportController {
 	 * Generated report
 	 */
 	private ObjectProperty<Report> generatedReport = new SimpleObjectProperty<>();//TODO: destroy on close
+	/**
+	 * Cache of generated reports
+	 */
+	private final ReportCache reportCache = new ReportCache();
 
 	/**
 	 * Initializes the controller
@@ -181,6 +186,7 @@ public class ReportController {
 				Report report = new Report(dataManager);
 				report.setStartDate(startDate.getValue());
 				report.setEndDate(endDate.getValue());
+				report.setReportCache(reportCache);
 				report.progressProperty().addListener(new ChangeListener<Number>() {
 					@Override
 					public void changed(ObservableValue<? extends Number> ov, Number oldValue, Number newValue) {
@@ -254,7 +260,7 @@ public class ReportController {
 				selectedFile = new File(selectedFile.getParentFile(), selectedFile.getName() + ".pdf"); //NOI18N
 			try {
 				generatedReport.get().savePdfReport(selectedFile);
-			} catch (FileNotFoundException | DRException ex) {
+			} catch (IOException | DRException ex) {
 				log.log(Level.SEVERE, null, ex);
 				ExceptionLogger.getInstance().showException(null, ex);
 			}
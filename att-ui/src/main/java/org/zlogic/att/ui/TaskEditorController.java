@@ -30,6 +30,7 @@ import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
@@ -43,6 +44,8 @@ import javafx.scene.image.Image;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.Dragboard;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TransferMode;
 import javafx.util.Callback;
@@ -71,6 +74,10 @@ public class TaskEditorController {
 	 * Localization messages
 	 */
 	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/att/ui/messages");
+	/**
+	 * Maximum number of custom field values suggested while typing
+	 */
+	private static final int AUTOCOMPLETE_MAX_RESULTS = 20;
 	/**
 	 * List of currently edited tasks
 	 */
@@ -200,7 +207,7 @@ public class TaskEditorController {
 		public void changed(ObservableValue<? extends String> ov, String oldValue, String newValue) {
 			Duration tasksTime = Duration.ZERO;
 			for (TaskAdapter taskAdapter : monitorTasks)
-				tasksTime = tasksTime.plus(taskAdapter.getTask().getTotalTime());
+				tasksTime = tasksTime.plus(taskAdapter.getTotalTime());
 			totalTime.setText(DurationFormatter.formatDuration(tasksTime));
 		}
 
@@ -354,6 +361,12 @@ public class TaskEditorController {
 			@Override
 			public TableCell<CustomFieldValueAdapter, String> call(TableColumn<CustomFieldValueAdapter, String> p) {
 				ComboBoxTableCell<CustomFieldValueAdapter, String> cell = new ComboBoxTableCell<CustomFieldValueAdapter, String>() {
+					/**
+					 * True if the autocomplete handler was added to the combo
+					 * box editor
+					 */
+					private boolean autocompleteHandlerAdded = false;
+
 					@Override
 					public void cancelEdit() {
 						dataManager.editingCellsProperty().remove(this);
@@ -364,6 +377,46 @@ public class TaskEditorController {
 					public void startEdit() {
 						dataManager.editingCellsProperty().add(this);
 						super.startEdit();
+						if (!autocompleteHandlerAdded && getGraphic() instanceof ComboBox) {
+							//Only the editor and popup are used, the items are changed through the cell
+							ComboBox<?> comboBox = (ComboBox<?>) getGraphic();
+							comboBox.getEditor().addEventHandler(KeyEvent.KEY_RELEASED, new EventHandler<KeyEvent>() {
+								private ComboBox<?> comboBox;
+
+								public EventHandler<KeyEvent> setComboBox(ComboBox<?> comboBox) {
+									this.comboBox = comboBox;
+									return this;
+								}
+
+								@Override
+								public void handle(KeyEvent event) {
+									if (event.getCode().isNavigationKey() || event.getCode() == KeyCode.ENTER || event.getCode() == KeyCode.ESCAPE || event.getCode() == KeyCode.TAB)
+										return;
+									Object item = getTableRow().getItem();
+									if (!(item instanceof CustomFieldValueAdapter))
+										return;
+									CustomFieldAdapter customField = ((CustomFieldValueAdapter) item).getCustomField();
+									String text = comboBox.getEditor().getText();
+									int caretPosition = comboBox.getEditor().getCaretPosition();
+									if (text == null || text.isEmpty()) {
+										ObservableList<String> customFieldValues = dataManager.getFilteredCustomFieldValues(customField);
+										getItems().setAll(customFieldValues != null ? customFieldValues : new LinkedList<String>());
+									} else {
+										getItems().setAll(dataManager.findFilteredCustomFieldValues(customField, text, AUTOCOMPLETE_MAX_RESULTS));
+									}
+									//Changing items could reset the typed text
+									if (text != null && !text.equals(comboBox.getEditor().getText())) {
+										comboBox.getEditor().setText(text);
+										comboBox.getEditor().positionCaret(caretPosition);
+									}
+									if (!getItems().isEmpty())
+										comboBox.show();
+									else
+										comboBox.hide();
+								}
+							}.setComboBox(comboBox));
+							autocompleteHandlerAdded = true;
+						}
 					}
 
 					@Override
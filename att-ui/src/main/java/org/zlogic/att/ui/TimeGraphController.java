@@ -38,6 +38,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.shape.Line;
 import javafx.util.converter.DateTimeStringConverter;
 import org.zlogic.att.ui.adapters.DataManager;
+import org.zlogic.att.ui.adapters.TaskAdapter;
 import org.zlogic.att.ui.adapters.TimeSegmentAdapter;
 import org.zlogic.att.ui.timegraph.MouseHandler;
 import org.zlogic.att.ui.timegraph.TimeSegmentGraphicsManager;
@@ -230,7 +231,7 @@ public class TimeGraphController {
 					return;
 				if (!layoutPos.isBound())
 					layoutPos.set((layoutPos.get() - timeGraphPane.getWidth() / 2) * (newValue.doubleValue() / oldValue.doubleValue()) + timeGraphPane.getWidth() / 2);
-				graphicsManager.updateTimeSegmentGraphics();
+				updateTimeSegmentGraphics();
 				updateTicksStep();
 				updateTicks();
 			}
@@ -242,7 +243,7 @@ public class TimeGraphController {
 			public void changed(ObservableValue<? extends Number> observableValue, Number oldValue, Number newValue) {
 				if (!oldValue.equals(newValue)) {
 					updateTicks();
-					graphicsManager.updateTimeSegmentGraphics();
+					updateTimeSegmentGraphics();
 				}
 			}
 		});
@@ -292,16 +293,19 @@ public class TimeGraphController {
 	private void updateTimescale() {
 		graphicsManager.clearTimeScale();
 		if (mouseHandler.getDragAnchor() == null) {
-			//Graph was not moved - so we can jump to the latest time
+			//Graph was not moved - so we can jump to the latest time (known without loading the time segments)
 			Date latestDate = null;
-			for (TimeSegmentAdapter timeSegment : dataManager.getTimeSegments())
-				if (latestDate == null || timeSegment.endProperty().get().after(latestDate))
-					latestDate = timeSegment.endProperty().get();
+			for (TaskAdapter task : dataManager.getTasks()) {
+				Date lastTime = task.lastTimeProperty().get();
+				if (lastTime != null && (latestDate == null || lastTime.after(latestDate)))
+					latestDate = lastTime;
+			}
 			if (latestDate != null)
 				layoutPos.bind(timeGraphPane.widthProperty()/*.negate().*/.subtract(scale.multiply(latestDate.getTime())));
 		}
 
-		//Add time segments to bins
+		//Add visible time segments to bins
+		loadVisibleTimeSegments();
 		for (TimeSegmentAdapter timeSegment : dataManager.getTimeSegments())
 			graphicsManager.addTimeSegmentGraphics(timeSegment);
 
@@ -309,6 +313,25 @@ public class TimeGraphController {
 		graphicsManager.updateTimeSegmentGraphics();
 	}
 
+	/**
+	 * Makes sure that time segments in the visible part of the graph are
+	 * loaded
+	 */
+	private void loadVisibleTimeSegments() {
+		if (!visibleProperty.get() || timeGraphPane.getWidth() <= 0)
+			return;
+		dataManager.loadTimeSegments(graphicsManager.coordinatesToTime(timeGraphPane.getLayoutX()), graphicsManager.coordinatesToTime(timeGraphPane.getLayoutX() + timeGraphPane.getWidth()));
+	}
+
+	/**
+	 * Loads time segments which became visible and updates the time segment
+	 * graphics
+	 */
+	private void updateTimeSegmentGraphics() {
+		loadVisibleTimeSegments();
+		graphicsManager.updateTimeSegmentGraphics();
+	}
+
 	/**
 	 * Updates the ticks step to match the current scale
 	 */
@@ -397,7 +420,7 @@ public class TimeGraphController {
 				layoutPos.unbind();
 			layoutPos.set(layoutPos.get() + deltaX);
 			updateTicks();
-			graphicsManager.updateTimeSegmentGraphics();
+			updateTimeSegmentGraphics();
 		}
 	}
 
@@ -450,7 +473,7 @@ public class TimeGraphController {
 		layoutPos.set(timeGraphPane.widthProperty().divide(2).subtract(scale.multiply(jumpDateValue.get().getTime())).get());
 
 		updateTicks();
-		graphicsManager.updateTimeSegmentGraphics();
+		updateTimeSegmentGraphics();
 	}
 
 	/**
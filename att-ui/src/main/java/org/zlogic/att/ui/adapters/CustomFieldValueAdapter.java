@@ -6,9 +6,14 @@
 package org.zlogic.att.ui.adapters;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
@@ -27,6 +32,10 @@ import org.zlogic.att.data.TransactedChange;
  */
 public class CustomFieldValueAdapter {
 
+	/**
+	 * The logger
+	 */
+	private final static Logger log = Logger.getLogger(CustomFieldValueAdapter.class.getName());
 	/**
 	 * Localization messages
 	 */
@@ -57,30 +66,71 @@ public class CustomFieldValueAdapter {
 		public void changed(ObservableValue<? extends String> observableValue, String oldValue, String newValue) {
 			oldValue = oldValue == null ? "" : oldValue; //NOI18N
 			if (newValue != null && !oldValue.equals(newValue) && getDataManager() != null) {
-				getDataManager().getPersistenceHelper().performTransactedChange(new TransactedChange() {
+				//Update the loaded entities and value usage immediately, so that the next edit sees this edit's values
+				List<TaskAdapter> changedTaskAdapters = new LinkedList<>(getTasks());
+				List<String> oldTaskValues = new LinkedList<>();
+				List<Long> taskIds = new LinkedList<>();
+				for (TaskAdapter taskAdapter : changedTaskAdapters) {
+					String oldTaskValue = taskAdapter.getCustomField(customFieldAdapter.getCustomField());
+					oldTaskValues.add(oldTaskValue);
+					taskIds.add(taskAdapter.getId());
+					taskAdapter.getTask().setCustomField(customFieldAdapter.getCustomField(), newValue);
+					taskAdapter.invalidateCurrentSummary();
+					getDataManager().updateCustomFieldValueUsage(getCustomField(), oldTaskValue, newValue);
+				}
+				//Write all tasks in one transaction
+				getDataManager().getPersistenceHelper().performTransactedChangeAsync(new TransactedChange() {
 					private String newValue;
-					private CustomFieldAdapter customFieldAdapter;
+					private CustomField customField;
+					private List<Long> taskIds;
 
-					public TransactedChange setNewValue(CustomFieldAdapter customFieldAdapter, String newValue) {
-						this.customFieldAdapter = customFieldAdapter;
+					public TransactedChange setNewValue(CustomField customField, List<Long> taskIds, String newValue) {
+						this.customField = customField;
+						this.taskIds = taskIds;
 						this.newValue = newValue;
 						return this;
 					}
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						CustomField foundCustomField = entityManager.find(CustomField.class, customFieldAdapter.getCustomField().getId());
-						for (TaskAdapter taskAdapter : getTasks()) {
-							(entityManager.find(Task.class, taskAdapter.getTask().getId())).setCustomField(foundCustomField, newValue);
-							taskAdapter.getTask().setCustomField(foundCustomField, newValue);
-						}
+						CustomField foundCustomField = entityManager.find(CustomField.class, customField.getId());
+						for (Long taskId : taskIds)
+							entityManager.find(Task.class, taskId).setCustomField(foundCustomField, newValue);
+					}
+				}.setNewValue(customFieldAdapter.getCustomField(), taskIds, newValue)).exceptionally(new Function<Throwable, Void>() {
+					private List<TaskAdapter> taskAdapters;
+					private List<String> oldTaskValues;
+					private String newValue;
+
+					public Function<Throwable, Void> setNewValue(List<TaskAdapter> taskAdapters, List<String> oldTaskValues, String newValue) {
+						this.taskAdapters = taskAdapters;
+						this.oldTaskValues = oldTaskValues;
+						this.newValue = newValue;
+						return this;
+					}
+
+					@Override
+					public Void apply(Throwable ex) {
+						log.log(Level.SEVERE, messages.getString("CANNOT_SAVE_CUSTOM_FIELD_VALUE"), ex);
+						//Restore the values which are actually stored, unless they were already changed by a later edit
+						Platform.runLater(new Runnable() {
+							@Override
+							public void run() {
+								Iterator<String> oldTaskValuesIterator = oldTaskValues.iterator();
+								for (TaskAdapter taskAdapter : taskAdapters) {
+									String oldTaskValue = oldTaskValuesIterator.next();
+									if (!newValue.equals(taskAdapter.getCustomField(customFieldAdapter.getCustomField())))
+										continue;
+									taskAdapter.getTask().setCustomField(customFieldAdapter.getCustomField(), oldTaskValue);
+									taskAdapter.invalidateCurrentSummary();
+									getDataManager().updateCustomFieldValueUsage(getCustomField(), newValue, oldTaskValue);
+								}
+								updateFxProperties();
+							}
+						});
+						return null;
 					}
-				}.setNewValue(getCustomField(), newValue));
-				for (TaskAdapter taskAdapter : getTasks())
-					taskAdapter.updateFromDatabase();
-				updateFxProperties();
-				getDataManager().removeFilteredCustomFieldValue(getCustomField(), oldValue);
-				getDataManager().addFilteredCustomFieldValue(getCustomField(), newValue);
+				}.setNewValue(changedTaskAdapters, oldTaskValues, newValue));
 			}
 		}
 	};
@@ -183,7 +233,7 @@ public class CustomFieldValueAdapter {
 			String customFieldValue = null;
 			boolean multipleValuesFound = false;
 			for (TaskAdapter taskAdapter : taskAdapters) {
-				String taskCustomFieldValue = taskAdapter.getTask().getCustomField(customFieldAdapter.getCustomField());
+				String taskCustomFieldValue = taskAdapter.getCustomField(customFieldAdapter.getCustomField());
 				if (taskCustomFieldValue == null)
 					continue;
 				if (customFieldValue == null || taskCustomFieldValue.equals(customFieldValue))
@@ -0,0 +1,161 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.adapters;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.zlogic.att.data.CustomField;
+import org.zlogic.att.data.CustomFieldValueUsage;
+import org.zlogic.att.data.PersistenceHelper;
+
+/**
+ * In-memory cache of all custom field values and the number of tasks using
+ * them. Loaded from the database once and then patched on every change, so
+ * that reloading tasks doesn't need to query all custom field values again.
+ * Not thread-safe, should be used only from the JavaFX thread.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueDictionary {
+
+	/**
+	 * Usage counts of custom field values, custom field=key, value=key of
+	 * inner map
+	 */
+	private Map<CustomField, NavigableMap<String, Long>> usageCounts = new TreeMap<>();
+	/**
+	 * True if the dictionary was loaded from the database
+	 */
+	private boolean loaded = false;
+	/**
+	 * The PersistenceHelper used to load the dictionary
+	 */
+	private PersistenceHelper persistenceHelper;
+
+	/**
+	 * Creates a CustomFieldValueDictionary instance
+	 *
+	 * @param persistenceHelper the PersistenceHelper used to load the
+	 * dictionary
+	 */
+	public CustomFieldValueDictionary(PersistenceHelper persistenceHelper) {
+		this.persistenceHelper = persistenceHelper;
+	}
+
+	/**
+	 * Loads the dictionary from the database if it's not loaded yet
+	 *
+	 * @return true if the dictionary was loaded by this call
+	 */
+	public boolean load() {
+		if (loaded)
+			return false;
+		usageCounts.clear();
+		for (CustomFieldValueUsage usage : persistenceHelper.getCustomFieldValueUsages())
+			getFieldUsageCounts(usage.getCustomField()).put(usage.getValue(), usage.getUsageCount());
+		loaded = true;
+		return true;
+	}
+
+	/**
+	 * Forgets all cached values; they will be reloaded from the database on the
+	 * next load call
+	 */
+	public void invalidate() {
+		usageCounts.clear();
+		loaded = false;
+	}
+
+	/**
+	 * Returns all values of a custom field with their usage counts, sorted by
+	 * value
+	 *
+	 * @param customField the custom field
+	 * @return the unmodifiable map of values and their usage counts
+	 */
+	public NavigableMap<String, Long> getValues(CustomField customField) {
+		load();
+		NavigableMap<String, Long> values = usageCounts.get(customField);
+		return values != null ? Collections.unmodifiableNavigableMap(values) : Collections.<String, Long>emptyNavigableMap();
+	}
+
+	/**
+	 * Returns the number of tasks using a custom field value
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value
+	 * @return the number of tasks using this value
+	 */
+	public long getUsageCount(CustomField customField, String value) {
+		Long usageCount = getValues(customField).get(value);
+		return usageCount != null ? usageCount : 0;
+	}
+
+	/**
+	 * Registers a new usage of a custom field value
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value (ignored if null)
+	 * @return true if the value was not used before
+	 */
+	public boolean addValue(CustomField customField, String value) {
+		if (!loaded || value == null)
+			return false;
+		NavigableMap<String, Long> values = getFieldUsageCounts(customField);
+		Long usageCount = values.get(value);
+		values.put(value, usageCount != null ? usageCount + 1 : 1);
+		return usageCount == null;
+	}
+
+	/**
+	 * Unregisters a usage of a custom field value
+	 *
+	 * @param customField the custom field
+	 * @param value the custom field value (ignored if null)
+	 * @return true if the value is no longer used
+	 */
+	public boolean removeValue(CustomField customField, String value) {
+		if (!loaded || value == null)
+			return false;
+		NavigableMap<String, Long> values = usageCounts.get(customField);
+		Long usageCount = values != null ? values.get(value) : null;
+		if (usageCount == null)
+			return false;
+		if (usageCount > 1) {
+			values.put(value, usageCount - 1);
+			return false;
+		}
+		values.remove(value);
+		return true;
+	}
+
+	/**
+	 * Removes all values of a custom field
+	 *
+	 * @param customField the custom field
+	 */
+	public void removeCustomField(CustomField customField) {
+		usageCounts.remove(customField);
+	}
+
+	/**
+	 * Returns the usage counts map for a custom field, creating it if necessary
+	 *
+	 * @param customField the custom field
+	 * @return the usage counts map for customField
+	 */
+	private NavigableMap<String, Long> getFieldUsageCounts(CustomField customField) {
+		NavigableMap<String, Long> values = usageCounts.get(customField);
+		if (values == null) {
+			values = new TreeMap<>();
+			usageCounts.put(customField, values);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.adapters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Reference-counted index of custom field values, used for autocomplete.
+ * Each custom field's values are kept in a sorted tree; adding a value,
+ * removing a value and checking if it's still used take O(log n) time and
+ * don't require scanning tasks. Not thread-safe, should be used only from the
+ * JavaFX thread.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueIndex {
+
+	/**
+	 * Number of references to each value of custom fields, custom field=key,
+	 * value=key of the sorted inner map
+	 */
+	private Map<CustomFieldAdapter, NavigableMap<String, Long>> fieldValues = new TreeMap<>();
+
+	/**
+	 * Adds a reference to a custom field value
+	 *
+	 * @param customField the custom field
+	 * @param value the value
+	 * @return true if the value was not referenced before
+	 */
+	public boolean add(CustomFieldAdapter customField, String value) {
+		NavigableMap<String, Long> values = getFieldValues(customField);
+		Long referenceCount = values.get(value);
+		values.put(value, referenceCount != null ? referenceCount + 1 : 1);
+		return referenceCount == null;
+	}
+
+	/**
+	 * Removes a reference to a custom field value
+	 *
+	 * @param customField the custom field
+	 * @param value the value
+	 * @return true if the value is no longer referenced and was removed
+	 */
+	public boolean remove(CustomFieldAdapter customField, String value) {
+		NavigableMap<String, Long> values = fieldValues.get(customField);
+		Long referenceCount = values != null ? values.get(value) : null;
+		if (referenceCount == null)
+			return false;
+		if (referenceCount > 1) {
+			values.put(value, referenceCount - 1);
+			return false;
+		}
+		values.remove(value);
+		return true;
+	}
+
+	/**
+	 * Returns true if a custom field value is referenced
+	 *
+	 * @param customField the custom field
+	 * @param value the value
+	 * @return true if the value is referenced
+	 */
+	public boolean contains(CustomFieldAdapter customField, String value) {
+		NavigableMap<String, Long> values = fieldValues.get(customField);
+		return values != null && values.containsKey(value);
+	}
+
+	/**
+	 * Returns a sorted list of all referenced values of a custom field. The
+	 * list is a copy and is not updated when values are added or removed.
+	 *
+	 * @param customField the custom field
+	 * @return the sorted list of values
+	 */
+	public ObservableList<String> getValues(CustomFieldAdapter customField) {
+		NavigableMap<String, Long> values = fieldValues.get(customField);
+		return values != null ? FXCollections.observableArrayList(values.keySet()) : FXCollections.<String>observableArrayList();
+	}
+
+	/**
+	 * Returns the most used values of a custom field starting with a prefix.
+	 * The prefix range starts at the prefix in the sorted tree, and only the
+	 * best maxResults values are kept while scanning it.
+	 *
+	 * @param customField the custom field
+	 * @param prefix the value prefix
+	 * @param maxResults the maximum number of returned values
+	 * @return the matching values, the most used values first (values with
+	 * equal usage are sorted)
+	 */
+	public List<String> findByPrefix(CustomFieldAdapter customField, String prefix, int maxResults) {
+		NavigableMap<String, Long> values = fieldValues.get(customField);
+		if (values == null || maxResults <= 0)
+			return new ArrayList<>(0);
+		String[] bestValues = new String[maxResults];
+		long[] bestCounts = new long[maxResults];
+		int found = 0;
+		for (Map.Entry<String, Long> entry : values.tailMap(prefix, true).entrySet()) {
+			String value = entry.getKey();
+			if (!value.startsWith(prefix))
+				break;
+			long count = entry.getValue();
+			if (found == maxResults && count <= bestCounts[found - 1])
+				continue;
+			//Insertion into the small sorted array of best matches
+			int position = found < maxResults ? found++ : found - 1;
+			while (position > 0 && bestCounts[position - 1] < count) {
+				bestValues[position] = bestValues[position - 1];
+				bestCounts[position] = bestCounts[position - 1];
+				position--;
+			}
+			bestValues[position] = value;
+			bestCounts[position] = count;
+		}
+		return Arrays.asList(bestValues).subList(0, found);
+	}
+
+	/**
+	 * Removes all values of a custom field
+	 *
+	 * @param customField the custom field
+	 */
+	public void removeCustomField(CustomFieldAdapter customField) {
+		fieldValues.remove(customField);
+	}
+
+	/**
+	 * Removes all values of all custom fields
+	 */
+	public void clear() {
+		fieldValues.clear();
+	}
+
+	/**
+	 * Returns the values of a custom field, creating them if necessary
+	 *
+	 * @param customField the custom field
+	 * @return the values of customField
+	 */
+	private NavigableMap<String, Long> getFieldValues(CustomFieldAdapter customField) {
+		NavigableMap<String, Long> values = fieldValues.get(customField);
+		if (values == null) {
+			values = new TreeMap<>();
+			fieldValues.put(customField, values);
+		}
+		return values;
+	}
+}
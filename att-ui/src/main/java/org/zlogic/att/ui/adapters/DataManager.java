@@ -6,17 +6,23 @@
 package org.zlogic.att.ui.adapters;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
@@ -25,6 +31,7 @@ import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
@@ -33,6 +40,7 @@ import javafx.event.EventHandler;
 import javafx.event.EventType;
 import javafx.scene.Node;
 import javax.persistence.EntityManager;
+import org.zlogic.att.data.ConfigurationElement;
 import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.Filter;
 import org.zlogic.att.data.FilterCustomField;
@@ -40,6 +48,7 @@ import org.zlogic.att.data.FilterDate;
 import org.zlogic.att.data.FilterTaskCompleted;
 import org.zlogic.att.data.PersistenceHelper;
 import org.zlogic.att.data.Task;
+import org.zlogic.att.data.TaskSummary;
 import org.zlogic.att.data.TimeSegment;
 import org.zlogic.att.data.TransactedChange;
 import org.zlogic.att.ui.filter.FilterFactory;
@@ -67,18 +76,61 @@ public class DataManager {
 	 * Localization messages
 	 */
 	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/att/ui/messages");
+	/**
+	 * Default interval for writing the timing segment's end time to the
+	 * database
+	 */
+	private static final Duration DEFAULT_TIMING_PERSIST_INTERVAL = Duration.ofSeconds(30);
+	/**
+	 * Maximum interval for writing the timing segment's end time to the
+	 * database; this is the maximum time which can be lost in case of a crash
+	 */
+	private static final Duration MAX_TIMING_PERSIST_INTERVAL = Duration.ofMinutes(5);
+	/**
+	 * Minimum number of tasks for which filters are applied in parallel
+	 */
+	private static final int PARALLEL_FILTER_THRESHOLD = 10000;
 	/**
 	 * The persistence helper instance
 	 */
-	private PersistenceHelper persistenceHelper = new PersistenceHelper();
+	private PersistenceHelper persistenceHelper;
 	/**
 	 * List of all tasks
 	 */
 	private ObservableList<TaskAdapter> tasks = FXCollections.observableList(new LinkedList<TaskAdapter>());
+	/**
+	 * Index of tasks, id=key, kept in sync with tasks
+	 */
+	private Map<Long, TaskAdapter> taskIndex = new HashMap<>();
+	/**
+	 * Snapshot of all tasks (including tasks hidden by filters), id=key. Reused
+	 * by reloadTasks if a task was not modified, and used by applyFilters to
+	 * filter tasks in memory.
+	 */
+	private Map<Long, TaskAdapter> taskAdapterCache = new TreeMap<>();
+	/**
+	 * The database change number at the last reloadTasks call (null if tasks
+	 * were never loaded)
+	 */
+	private Long lastReloadChangeNumber;
 	/**
 	 * Map of all time segments, id=key
 	 */
 	private ObservableList<TimeSegmentAdapter> timeSegments = FXCollections.observableList(new LinkedList<TimeSegmentAdapter>());
+	/**
+	 * Index of time segments, id=key, kept in sync with timeSegments
+	 */
+	private Map<Long, TimeSegmentAdapter> timeSegmentIndex = new HashMap<>();
+	/**
+	 * Start of the time range for which time segments of all filtered tasks
+	 * are loaded (null if time segments were not requested)
+	 */
+	private Date timeSegmentsRangeStart;
+	/**
+	 * End of the time range for which time segments of all filtered tasks are
+	 * loaded (null if time segments were not requested)
+	 */
+	private Date timeSegmentsRangeEnd;
 	/**
 	 * The last update date
 	 */
@@ -87,12 +139,17 @@ public class DataManager {
 	 * Possible values of custom fields, used for autocomplete, with filter
 	 * applied
 	 */
-	private Map<CustomFieldAdapter, ObservableList<String>> filteredCustomFieldValues = new TreeMap<>();
+	private CustomFieldValueIndex filteredCustomFieldValues = new CustomFieldValueIndex();
 	/**
 	 * Possible values of custom fields, used for autocomplete, without filter
 	 * applied
 	 */
 	private Map<CustomFieldAdapter, ObservableList<String>> allCustomFieldValues = new TreeMap<>();
+	/**
+	 * Cached custom field values and their usage counts, used to build
+	 * allCustomFieldValues without querying the database on every reload
+	 */
+	private CustomFieldValueDictionary customFieldValueDictionary;
 	/**
 	 * List of all custom fields
 	 */
@@ -101,6 +158,10 @@ public class DataManager {
 	 * The currently active (timing) segment
 	 */
 	private ObjectProperty<TimeSegmentAdapter> timingSegment = new SimpleObjectProperty<>();
+	/**
+	 * Interval for writing the timing segment's end time to the database
+	 */
+	private Duration timingPersistInterval = DEFAULT_TIMING_PERSIST_INTERVAL;
 	/**
 	 * The currently active filters
 	 */
@@ -134,7 +195,7 @@ public class DataManager {
 	/**
 	 * Tasks updated event
 	 */
-	private EventType tasksUpdatedEvent = new EventType<>("Tasks updated");
+	private static final EventType tasksUpdatedEvent = new EventType<>("Tasks updated"); //NOI18N
 	/**
 	 * List of listeners for task updates (e.g. to update sort order)
 	 */
@@ -144,6 +205,17 @@ public class DataManager {
 	 * Creates a DataManager instance
 	 */
 	public DataManager() {
+		this(new PersistenceHelper());
+	}
+
+	/**
+	 * Creates a DataManager instance using a specific database
+	 *
+	 * @param persistenceHelper the PersistenceHelper instance
+	 */
+	protected DataManager(PersistenceHelper persistenceHelper) {
+		this.persistenceHelper = persistenceHelper;
+		customFieldValueDictionary = new CustomFieldValueDictionary(persistenceHelper);
 		/*((DataManager) this).reloadTasks();*/
 		editingCells.addListener(new SetChangeListener<Node>() {
 
@@ -153,6 +225,36 @@ public class DataManager {
 			}
 		});
 		pauseUpdates.bind(editingCellsEmpty.not().or(draggingTask));
+
+		//Keep the indexes in sync with the lists
+		tasks.addListener(new ListChangeListener<TaskAdapter>() {
+			@Override
+			public void onChanged(ListChangeListener.Change<? extends TaskAdapter> change) {
+				while (change.next()) {
+					for (TaskAdapter task : change.getRemoved())
+						if (taskIndex.get(task.getId()) == task)
+							taskIndex.remove(task.getId());
+					for (TaskAdapter task : change.getAddedSubList())
+						taskIndex.put(task.getId(), task);
+				}
+			}
+		});
+		timeSegments.addListener(new ListChangeListener<TimeSegmentAdapter>() {
+			@Override
+			public void onChanged(ListChangeListener.Change<? extends TimeSegmentAdapter> change) {
+				while (change.next()) {
+					for (TimeSegmentAdapter timeSegment : change.getRemoved())
+						if (timeSegmentIndex.get(timeSegment.getTimeSegment().getId()) == timeSegment)
+							timeSegmentIndex.remove(timeSegment.getTimeSegment().getId());
+					for (TimeSegmentAdapter timeSegment : change.getAddedSubList())
+						timeSegmentIndex.put(timeSegment.getTimeSegment().getId(), timeSegment);
+				}
+			}
+		});
+
+		ConfigurationElement timingPersistIntervalElement = persistenceHelper.getConfigurationElement("timingPersistInterval"); //NOI18N
+		if (timingPersistIntervalElement != null && timingPersistIntervalElement.getValue() instanceof Duration)
+			timingPersistInterval = clipTimingPersistInterval((Duration) timingPersistIntervalElement.getValue());
 	}
 
 	/**
@@ -162,6 +264,8 @@ public class DataManager {
 	public void shutdown() {
 		try {
 			reloadLock.writeLock().lock();
+			if (timingSegment.get() != null)
+				timingSegment.get().persistEndTime();
 			persistenceHelper.shutdown();
 			if (timingSegment.get() != null)
 				timingSegment.get().stopTiming();
@@ -171,51 +275,69 @@ public class DataManager {
 	}
 
 	/**
-	 * Adds a new value to the list of possible CustomField values.
+	 * Adds a reference to a value in the list of possible CustomField values.
 	 *
 	 * @param adapter the custom field
 	 * @param value the value to be added
 	 */
 	protected void addFilteredCustomFieldValue(CustomFieldAdapter adapter, String value) {
-		if (value == null)
-			value = ""; //NOI18N
-		if (!filteredCustomFieldValues.containsKey(adapter))
-			filteredCustomFieldValues.put(adapter, FXCollections.observableList(new LinkedList<String>()));
-		if (!allCustomFieldValues.containsKey(adapter))
-			allCustomFieldValues.put(adapter, FXCollections.observableList(new LinkedList<String>()));
-		ObservableList<String> values = filteredCustomFieldValues.get(adapter);
-		if (!values.contains(value)) {
-			values.add(value);
-			FXCollections.sort(values);
-		}
-		values = allCustomFieldValues.get(adapter);
-		if (!values.contains(value)) {
-			values.add(value);
-			FXCollections.sort(values);
-		}
+		filteredCustomFieldValues.add(adapter, value != null ? value : ""); //NOI18N
 	}
 
 	/**
-	 * Removes a value from the list of possible CustomField values. Performs
-	 * this only if the value is not used in any custom field.
+	 * Removes a reference to a value from the list of possible CustomField
+	 * values. The value is removed from the list only if it's no longer used
+	 * by any task.
 	 *
 	 * @param adapter the custom field
 	 * @param value the value of the Custom Field
 	 * @return true if the value was removed
 	 */
 	protected boolean removeFilteredCustomFieldValue(CustomFieldAdapter adapter, String value) {
-		if (!filteredCustomFieldValues.containsKey(adapter))
-			filteredCustomFieldValues.put(adapter, FXCollections.observableList(new LinkedList<String>()));
-		//Check if value is no longer used
-		for (CustomFieldAdapter customField : customFields)
-			for (TaskAdapter task : tasks) {
-				String taskCustomFieldValue = task.getTask().getCustomField(customField.getCustomField());
-				if (taskCustomFieldValue != null && taskCustomFieldValue.equals(value))
-					return false;
+		return filteredCustomFieldValues.remove(adapter, value != null ? value : ""); //NOI18N
+	}
+
+	/**
+	 * Updates the lists of possible CustomField values and the custom field
+	 * value dictionary after a task's custom field value was changed
+	 *
+	 * @param adapter the custom field
+	 * @param oldValue the previous value (or null if the value was not set)
+	 * @param newValue the new value (or null if the value was removed)
+	 */
+	protected void updateCustomFieldValueUsage(CustomFieldAdapter adapter, String oldValue, String newValue) {
+		if (oldValue != null && oldValue.equals(newValue))
+			return;
+		removeFilteredCustomFieldValue(adapter, oldValue);
+		addFilteredCustomFieldValue(adapter, newValue);
+		removeCustomFieldValueUsage(adapter, oldValue);
+		if (customFieldValueDictionary.addValue(adapter.getCustomField(), newValue)) {
+			ObservableList<String> values = allCustomFieldValues.get(adapter);
+			if (values == null) {
+				values = FXCollections.observableArrayList(""); //NOI18N
+				allCustomFieldValues.put(adapter, values);
 			}
-		//Remove the value
-		List<String> values = filteredCustomFieldValues.get(adapter);
-		return values.remove(value);
+			int index = Collections.binarySearch(values, newValue);
+			if (index < 0)
+				values.add(-index - 1, newValue);
+		}
+	}
+
+	/**
+	 * Removes a usage of a custom field value from the custom field value
+	 * dictionary, and removes the value from the list of all values if it's no
+	 * longer used
+	 *
+	 * @param adapter the custom field
+	 * @param value the value (or null if the value was not set)
+	 */
+	private void removeCustomFieldValueUsage(CustomFieldAdapter adapter, String value) {
+		ObservableList<String> values = allCustomFieldValues.get(adapter);
+		if (customFieldValueDictionary.removeValue(adapter.getCustomField(), value) && values != null && !value.isEmpty()) {
+			int index = Collections.binarySearch(values, value);
+			if (index >= 0)
+				values.remove(index);
+		}
 	}
 
 	/**
@@ -225,12 +347,19 @@ public class DataManager {
 	 * @return the associated TaskAdapter instance, or null
 	 */
 	public TaskAdapter findTaskAdapter(Task task) {
+		return findTaskAdapter(task.getId());
+	}
+
+	/**
+	 * Finds the TaskAdapter associated with a Task ID
+	 *
+	 * @param id the Task ID to be searched
+	 * @return the associated TaskAdapter instance, or null
+	 */
+	public TaskAdapter findTaskAdapter(long id) {
 		try {
 			reloadLock.readLock().lock();
-			for (TaskAdapter taskAdapter : tasks)
-				if (taskAdapter.getTask().equals(task))
-					return taskAdapter;
-			return null;
+			return taskIndex.get(id);
 		} finally {
 			reloadLock.readLock().unlock();
 		}
@@ -245,10 +374,7 @@ public class DataManager {
 	public TimeSegmentAdapter findTimeSegmentAdapter(TimeSegment timeSegment) {
 		try {
 			reloadLock.readLock().lock();
-			for (TimeSegmentAdapter timeSegmentAdapter : timeSegments)
-				if (timeSegmentAdapter.getTimeSegment().equals(timeSegment))
-					return timeSegmentAdapter;
-			return null;
+			return timeSegmentIndex.get(timeSegment.getId());
 		} finally {
 			reloadLock.readLock().unlock();
 		}
@@ -308,15 +434,58 @@ public class DataManager {
 		}
 	}
 
+	/**
+	 * Clips the timing segment persist interval to the allowed range
+	 *
+	 * @param interval the interval to clip
+	 * @return the clipped interval
+	 */
+	private Duration clipTimingPersistInterval(Duration interval) {
+		if (interval.compareTo(Duration.ofSeconds(1)) < 0)
+			return Duration.ofSeconds(1);
+		if (interval.compareTo(MAX_TIMING_PERSIST_INTERVAL) > 0)
+			return MAX_TIMING_PERSIST_INTERVAL;
+		return interval;
+	}
+
+	/**
+	 * Returns the interval for writing the timing segment's end time to the
+	 * database. There is no setting for it in the UI; the interval is read
+	 * when the DataManager is created from the "timingPersistInterval"
+	 * ConfigurationElement, a Duration between 1 second and 5 minutes
+	 * (values outside this range are clipped). If the element is missing, 30
+	 * seconds is used.
+	 *
+	 * @return the interval for writing the timing segment's end time to the
+	 * database
+	 */
+	public Duration getTimingPersistInterval() {
+		return timingPersistInterval;
+	}
+
 	/**
 	 * Returns a list of all possible CustomField values for a specific
 	 * CustomField. Used for autocomplete. Filter is applied.
 	 *
 	 * @param adapter the CustomFieldAdapter for which values will be retrieved
-	 * @return the list of all possible CustomField values
+	 * @return the sorted list of all possible CustomField values (a copy which
+	 * is not updated)
 	 */
 	public ObservableList<String> getFilteredCustomFieldValues(CustomFieldAdapter adapter) {
-		return filteredCustomFieldValues.get(adapter);
+		return filteredCustomFieldValues.getValues(adapter);
+	}
+
+	/**
+	 * Returns the most used CustomField values starting with a prefix. Used
+	 * for autocomplete while typing. Filter is applied.
+	 *
+	 * @param adapter the CustomFieldAdapter for which values will be retrieved
+	 * @param prefix the typed value prefix
+	 * @param maxResults the maximum number of returned values
+	 * @return the matching CustomField values, the most used values first
+	 */
+	public List<String> findFilteredCustomFieldValues(CustomFieldAdapter adapter, String prefix, int maxResults) {
+		return filteredCustomFieldValues.findByPrefix(adapter, prefix, maxResults);
 	}
 
 	/**
@@ -333,9 +502,12 @@ public class DataManager {
 
 	/**
 	 * Updates the lastTaskUpdate property, signaling that the task list has
-	 * updated.
+	 * updated. Does nothing if there are no listeners (e.g. if the UI is not
+	 * created).
 	 */
 	protected void signalTaskUpdate() {
+		if (tasksUpdatedListeners.isEmpty())
+			return;
 		Platform.runLater(new Runnable() {
 			@Override
 			public void run() {
@@ -368,7 +540,7 @@ public class DataManager {
 		Date startDate = getFilterStartDate();
 		Date endDate = getFilterEndDate();
 		for (TaskAdapter task : tasks)
-			totalTime = totalTime.plus(task.getTask().getTotalTime(startDate, endDate));
+			totalTime = totalTime.plus(task.getTotalTime(startDate, endDate));
 		filteredTotalTime.setValue(totalTime);
 	}
 	/*
@@ -376,29 +548,41 @@ public class DataManager {
 	 */
 
 	/**
-	 * Reloads the tasks from database. Forgets old TaskAdapters.
+	 * Reloads the tasks from database. Reuses TaskAdapters of tasks which were
+	 * not modified since the last reload, and loads summaries only for new or
+	 * modified tasks; only the first reload queries all tasks. Time segments
+	 * are loaded on first use.
 	 */
 	public void reloadTasks() {
 		try {
 			reloadLock.writeLock().lock();
-			tasks.clear();
-			timeSegments.clear();
-			if (timingSegment.get() != null) {
-				TaskAdapter ownerTask = timingSegment.get().ownerTaskProperty().get();
-				//Keep the currently timing segment's task
-				tasks.add(ownerTask);
-
-				//Restore the currently timing segment's task's segments
-				timeSegments.add(timingSegment.get());
-				for (TimeSegmentAdapter segment : ownerTask.timeSegmentsProperty())
-					addTimeSegmentAdapter(segment);
+			//All changes up to this number are committed and will be seen by the queries below
+			long reloadChangeNumber = persistenceHelper.getChangeNumber();
+			//Filter dates are used to clip the summaries' total time
+			reloadFilters();
+			TaskAdapter timingTask = timingSegment.get() != null ? timingSegment.get().ownerTaskProperty().get() : null;
+			Set<Long> reloadSummaryIds = new TreeSet<>();
+			if (lastReloadChangeNumber == null) {
+				//Initial load
+				for (Long id : persistenceHelper.getTaskIds(false, null))
+					if (!taskAdapterCache.containsKey(id))
+						reloadSummaryIds.add(id);
+			} else {
+				//Forget deleted and modified tasks, they will be reloaded when needed
+				taskAdapterCache.keySet().removeAll(persistenceHelper.getDeletedTaskIds(lastReloadChangeNumber));
+				for (Long id : persistenceHelper.getTaskIds(false, lastReloadChangeNumber))
+					if (timingTask == null || timingTask.getId() != id) {
+						taskAdapterCache.remove(id);
+						reloadSummaryIds.add(id);
+					}
 			}
-			//Load all other tasks except for the timing segment task
-			for (Task task : persistenceHelper.getAllTasks(true))
-				if (findTaskAdapter(task) == null)
-					tasks.add(new TaskAdapter(task, this));
+			//Load summaries for new and modified tasks
+			for (TaskSummary summary : loadTaskSummaries(reloadSummaryIds, taskAdapterCache.size() + reloadSummaryIds.size(), getFilterStartDate(), getFilterEndDate()))
+				taskAdapterCache.put(summary.getId(), new TaskAdapter(summary, this));
+			lastReloadChangeNumber = reloadChangeNumber;
+
+			filterTasks();
 			reloadCustomFields();
-			reloadFilters();
 			updateFilteredTotalTime();
 			signalTaskUpdate();
 		} finally {
@@ -407,11 +591,151 @@ public class DataManager {
 	}
 
 	/**
-	 * Applies task filters.
+	 * Applies task filters. Tasks are filtered in memory; the database is
+	 * queried only to update the clipped total time if the filter dates were
+	 * changed.
 	 */
 	public void applyFilters() {
-		reloadTasks();
-		signalTaskUpdate();
+		try {
+			reloadLock.writeLock().lock();
+			filterTasks();
+			updateFilteredCustomFieldValues();
+			updateFilteredTotalTime();
+			signalTaskUpdate();
+		} finally {
+			reloadLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the tasks list with tasks from taskAdapterCache which match the
+	 * current filters. Reloads summaries of matching tasks if their clipped
+	 * total time was computed for different filter dates.
+	 */
+	private void filterTasks() {
+		Date filterStartDate = getFilterStartDate();
+		Date filterEndDate = getFilterEndDate();
+		TaskAdapter timingTask = timingSegment.get() != null ? timingSegment.get().ownerTaskProperty().get() : null;
+
+		//Combine the filters
+		List<java.util.function.Predicate<TaskSummary>> filterPredicates = new LinkedList<>();
+		for (FilterHolder filter : filters)
+			if (filter.filterProperty().get() != null && filter.filterProperty().get().getFilter() != null)
+				filterPredicates.add(filter.filterProperty().get().getFilter().getTaskPredicate());
+		java.util.function.Predicate<TaskSummary> tasksPredicate = new java.util.function.Predicate<TaskSummary>() {
+			private List<java.util.function.Predicate<TaskSummary>> filterPredicates;
+
+			public java.util.function.Predicate<TaskSummary> setFilterPredicates(List<java.util.function.Predicate<TaskSummary>> filterPredicates) {
+				this.filterPredicates = new ArrayList<>(filterPredicates);
+				return this;
+			}
+
+			@Override
+			public boolean test(TaskSummary summary) {
+				for (java.util.function.Predicate<TaskSummary> filterPredicate : filterPredicates)
+					if (!filterPredicate.test(summary))
+						return false;
+				return true;
+			}
+		}.setFilterPredicates(filterPredicates);
+
+		//Take the summaries in this thread, so that the stream only reads immutable summaries and not the adapters
+		List<TaskSummary> allSummaries = new ArrayList<>(taskAdapterCache.size());
+		for (TaskAdapter taskAdapter : taskAdapterCache.values())
+			allSummaries.add(taskAdapter.getCurrentSummary());
+
+		//Filter the snapshot
+		Stream<TaskSummary> allSummariesStream = allSummaries.size() >= PARALLEL_FILTER_THRESHOLD ? allSummaries.parallelStream() : allSummaries.stream();
+		List<TaskAdapter> filteredTasks = new LinkedList<>();
+		for (TaskSummary summary : allSummariesStream.filter(tasksPredicate).collect(Collectors.<TaskSummary>toList()))
+			filteredTasks.add(taskAdapterCache.get(summary.getId()));
+
+		//Load summaries for tasks with outdated clipped total time
+		Set<Long> reloadSummaryIds = new TreeSet<>();
+		for (TaskAdapter taskAdapter : filteredTasks)
+			if (!taskAdapter.isLoaded() && !taskAdapter.isSummaryClippedBy(filterStartDate, filterEndDate))
+				reloadSummaryIds.add(taskAdapter.getId());
+		for (TaskSummary summary : loadTaskSummaries(reloadSummaryIds, taskAdapterCache.size(), filterStartDate, filterEndDate)) {
+			TaskAdapter taskAdapter = taskAdapterCache.get(summary.getId());
+			if (taskAdapter != null)
+				taskAdapter.setSummary(summary);
+		}
+
+		tasks.clear();
+		timeSegments.clear();
+		if (timingTask != null) {
+			//Keep the currently timing segment's task
+			tasks.add(timingTask);
+			taskAdapterCache.put(timingTask.getId(), timingTask);
+
+			//Restore the currently timing segment's task's segments
+			timeSegments.add(timingSegment.get());
+			for (TimeSegmentAdapter segment : timingTask.timeSegmentsProperty())
+				addTimeSegmentAdapter(segment);
+		}
+		//Restore all other tasks and their loaded segments
+		List<TimeSegmentAdapter> filteredTimeSegments = new LinkedList<>();
+		filteredTasks.remove(timingTask);
+		for (TaskAdapter taskAdapter : filteredTasks)
+			if (taskAdapter.isLoaded())
+				filteredTimeSegments.addAll(taskAdapter.timeSegmentsProperty());
+		tasks.addAll(filteredTasks);
+		timeSegments.addAll(filteredTimeSegments);
+		//Load the segments of tasks which now match the filters
+		loadTimeSegmentsRange();
+	}
+
+	/**
+	 * Loads filtered tasks which have time segments in the requested time
+	 * segments range; their time segments are added to the time segments list.
+	 * Tasks which are already loaded, or whose summary's first and last times
+	 * are outside the range, are skipped without querying the database.
+	 */
+	private void loadTimeSegmentsRange() {
+		if (timeSegmentsRangeStart == null || timeSegmentsRangeEnd == null)
+			return;
+		Set<Long> candidateTaskIds = new TreeSet<>();
+		for (TaskAdapter taskAdapter : tasks) {
+			if (taskAdapter.isLoaded())
+				continue;
+			TaskSummary summary = taskAdapter.getCurrentSummary();
+			if (summary.getFirstTime() != null && summary.getLastTime() != null
+					&& !summary.getLastTime().before(timeSegmentsRangeStart) && !summary.getFirstTime().after(timeSegmentsRangeEnd))
+				candidateTaskIds.add(taskAdapter.getId());
+		}
+		if (candidateTaskIds.isEmpty())
+			return;
+		//The task may have a gap in the range, load only tasks which have time segments in the range
+		Set<Long> loadTaskIds = persistenceHelper.getTimeSegmentOwnerIds(timeSegmentsRangeStart, timeSegmentsRangeEnd);
+		loadTaskIds.retainAll(candidateTaskIds);
+		for (Task task : persistenceHelper.getTasksFromDatabase(loadTaskIds)) {
+			TaskAdapter taskAdapter = taskIndex.get(task.getId());
+			if (taskAdapter != null)
+				taskAdapter.setLoadedTask(task);
+		}
+	}
+
+	/**
+	 * Loads summaries of specific tasks. If most tasks are requested (e.g. on
+	 * the initial load), summaries of all tasks are loaded by a single query
+	 * without an ID list.
+	 *
+	 * @param taskIds IDs of tasks to load
+	 * @param allTasksCount the number of all tasks
+	 * @param clipStartTime the start time for the clipped total time (or null
+	 * if not limited)
+	 * @param clipEndTime the end time for the clipped total time (or null if
+	 * not limited)
+	 * @return summaries of the requested tasks
+	 */
+	private List<TaskSummary> loadTaskSummaries(Set<Long> taskIds, int allTasksCount, Date clipStartTime, Date clipEndTime) {
+		if (taskIds.size() * 2 < allTasksCount)
+			return persistenceHelper.getTaskSummaries(taskIds, clipStartTime, clipEndTime);
+		List<TaskSummary> summaries = new LinkedList<>();
+		for (TaskSummary summary : persistenceHelper.getAllTaskSummaries(false, clipStartTime, clipEndTime))
+			if (taskIds.contains(summary.getId()))
+				summaries.add(summary);
+		return summaries;
 	}
 
 	/**
@@ -419,16 +743,25 @@ public class DataManager {
 	 */
 	public void reloadAllCustomFieldValues() {
 		allCustomFieldValues.clear();
-		for (Map.Entry<CustomField, Set<String>> entry : persistenceHelper.getAllCustomFieldValues().entrySet())
-			for (CustomFieldAdapter customFieldAdapter : customFields)
-				if (customFieldAdapter.getCustomField().equals(entry.getKey())) {
-					ObservableList<String> customFieldValues = FXCollections.observableArrayList(entry.getValue());
-					if (!customFieldValues.contains("")) //NOI18N
-						customFieldValues.add(""); //NOI18N
-					FXCollections.sort(customFieldValues);
-					allCustomFieldValues.put(customFieldAdapter, customFieldValues);
-					break;
-				}
+		customFieldValueDictionary.load();
+		for (CustomFieldAdapter customFieldAdapter : customFields) {
+			Set<String> values = customFieldValueDictionary.getValues(customFieldAdapter.getCustomField()).keySet();
+			if (values.isEmpty())
+				continue;
+			ObservableList<String> customFieldValues = FXCollections.observableArrayList(values);
+			if (!values.contains("")) //NOI18N
+				customFieldValues.add(0, ""); //NOI18N
+			allCustomFieldValues.put(customFieldAdapter, customFieldValues);
+		}
+	}
+
+	/**
+	 * Forgets the cached custom field values; they will be loaded from the
+	 * database on the next reload. Should be called after changing the
+	 * database directly, e.g. after importing data.
+	 */
+	public void invalidateCustomFieldValues() {
+		customFieldValueDictionary.invalidate();
 	}
 
 	/**
@@ -437,13 +770,10 @@ public class DataManager {
 	 * version.
 	 */
 	public void reloadCustomFields() {
-		filteredCustomFieldValues.clear();
 		customFields.clear();
 		for (CustomField customField : persistenceHelper.getCustomFields())
 			customFields.add(new CustomFieldAdapter(customField, this));
-		for (TaskAdapter task : tasks)
-			for (CustomFieldAdapter adapter : customFields)
-				addFilteredCustomFieldValue(adapter, task.getTask().getCustomField(adapter.getCustomField()));
+		updateFilteredCustomFieldValues();
 		for (FilterHolder filter : filters)
 			if (filter.filterProperty().get() instanceof FilterCustomFieldAdapter)
 				((FilterCustomFieldAdapter) filter.filterProperty().get()).updateCustomFieldAdapter();
@@ -451,6 +781,17 @@ public class DataManager {
 		reloadAllCustomFieldValues();
 	}
 
+	/**
+	 * Rebuilds the lists of possible CustomField values from the filtered
+	 * tasks.
+	 */
+	private void updateFilteredCustomFieldValues() {
+		filteredCustomFieldValues.clear();
+		for (TaskAdapter task : tasks)
+			for (CustomFieldAdapter adapter : customFields)
+				addFilteredCustomFieldValue(adapter, task.getCustomField(adapter.getCustomField()));
+	}
+
 	/**
 	 * Reloads the filters from database. Forgets old FilterAdapters.
 	 */
@@ -483,7 +824,7 @@ public class DataManager {
 	 */
 	public TimeSegmentAdapter createTimeSegment(TaskAdapter owner) {
 		TimeSegmentAdapter newSegment = new TimeSegmentAdapter(persistenceHelper.createTimeSegment(owner.getTask()), owner, this);
-		if (!timeSegments.contains(newSegment))
+		if (!timeSegmentIndex.containsKey(newSegment.getTimeSegment().getId()))
 			timeSegments.add(newSegment);
 		signalTaskUpdate();
 		return newSegment;
@@ -496,7 +837,7 @@ public class DataManager {
 	 * @param timeSegment the time segment to add
 	 */
 	public void addTimeSegmentAdapter(TimeSegmentAdapter timeSegment) {
-		if (!timeSegments.contains(timeSegment))
+		if (!timeSegmentIndex.containsKey(timeSegment.getTimeSegment().getId()))
 			timeSegments.add(timeSegment);
 	}
 
@@ -508,6 +849,9 @@ public class DataManager {
 	public TaskAdapter createTask() {
 		TaskAdapter newTask = new TaskAdapter(persistenceHelper.createTask(), this);
 		tasks.add(newTask);
+		for (CustomFieldAdapter customField : customFields)
+			addFilteredCustomFieldValue(customField, null);
+		taskAdapterCache.put(newTask.getId(), newTask);
 		signalTaskUpdate();
 		return newTask;
 	}
@@ -520,6 +864,8 @@ public class DataManager {
 	public CustomFieldAdapter createCustomField() {
 		CustomFieldAdapter customField = new CustomFieldAdapter(persistenceHelper.createCustomField(), this);
 		customFields.add(customField);
+		for (TaskAdapter task : tasks)
+			addFilteredCustomFieldValue(customField, null);
 		return customField;
 	}
 
@@ -549,6 +895,7 @@ public class DataManager {
 			}
 		}.setDeleteSegment(segment.getTimeSegment()));
 		timeSegments.remove(segment);
+		ownerTask.updateSegmentTimes(segment.getTimeSegment().getStartTime(), segment.getTimeSegment().getEndTime(), null, null);
 		ownerTask.updateFromDatabase();
 		addFilteredTotalTime(Duration.ZERO.minus(segment.getTimeSegment().getClippedDuration(getFilterStartDate(), getFilterEndDate())));
 	}
@@ -572,15 +919,20 @@ public class DataManager {
 
 			@Override
 			public void performChange(EntityManager entityManager) {
-				Task task = entityManager.find(Task.class, deleteTask.getId());
-				//TODO: check that time segments will be deleted from database
-				entityManager.remove(task);
+				persistenceHelper.deleteTask(entityManager, deleteTask);
 			}
 		}.setDeleteTask(task.getTask()));
+		for (CustomFieldAdapter customField : customFields) {
+			String value = task.getCustomField(customField.getCustomField());
+			if (taskIndex.get(task.getId()) == task)
+				removeFilteredCustomFieldValue(customField, value);
+			removeCustomFieldValueUsage(customField, value);
+		}
 		for (TimeSegmentAdapter timeSegment : task.timeSegmentsProperty())
 			timeSegments.remove(timeSegment);
 		tasks.remove(task);
-		addFilteredTotalTime(Duration.ZERO.minus(task.getTask().getTotalTime(getFilterStartDate(), getFilterEndDate())));
+		taskAdapterCache.remove(task.getId());
+		addFilteredTotalTime(Duration.ZERO.minus(task.getTotalTime(getFilterStartDate(), getFilterEndDate())));
 		signalTaskUpdate();
 	}
 
@@ -590,35 +942,31 @@ public class DataManager {
 	 * @param customField the custom field to be deleted
 	 */
 	public void deleteCustomField(CustomFieldAdapter customField) {
-		List<Task> affectedTasks = new LinkedList<>();
+		Set<Long> affectedTaskIds = new TreeSet<>();
 		persistenceHelper.performTransactedChange(new TransactedChange() {
 			private CustomField deleteCustomField;
-			private List<Task> affectedTasks;
+			private Set<Long> affectedTaskIds;
 
-			public TransactedChange setParameters(CustomField deleteCustomField, List<Task> affectedTasks) {
+			public TransactedChange setParameters(CustomField deleteCustomField, Set<Long> affectedTaskIds) {
 				this.deleteCustomField = deleteCustomField;
-				this.affectedTasks = affectedTasks;
+				this.affectedTaskIds = affectedTaskIds;
 				return this;
 			}
 
 			@Override
 			public void performChange(EntityManager entityManager) {
-				CustomField customField = entityManager.find(CustomField.class, deleteCustomField.getId());
-				for (Task task : persistenceHelper.getAllTasks(entityManager, false)) {
-					if (task.getCustomField(customField) != null && !affectedTasks.contains(task))
-						affectedTasks.add(task);
-					task.setCustomField(customField, null);
-				}
-				entityManager.remove(customField);
+				affectedTaskIds.clear();
+				affectedTaskIds.addAll(persistenceHelper.deleteCustomField(entityManager, deleteCustomField));
 			}
-		}.setParameters(customField.getCustomField(), affectedTasks));
+		}.setParameters(customField.getCustomField(), affectedTaskIds));
 		customFields.remove(customField);
-		filteredCustomFieldValues.remove(customField);
+		filteredCustomFieldValues.removeCustomField(customField);
 		allCustomFieldValues.remove(customField);
-		for (Task affectedTask : affectedTasks) {
-			TaskAdapter taskAdapter = findTaskAdapter(affectedTask);
+		customFieldValueDictionary.removeCustomField(customField.getCustomField());
+		for (long affectedTaskId : affectedTaskIds) {
+			TaskAdapter taskAdapter = findTaskAdapter(affectedTaskId);
 			if (taskAdapter != null)
-				taskAdapter.updateFromDatabase();
+				taskAdapter.removeCustomField(customField.getCustomField());
 		}
 		for (FilterHolder filter : filters)
 			if (filter.filterProperty().get() instanceof FilterCustomFieldAdapter) {
@@ -663,14 +1011,41 @@ public class DataManager {
 	}
 
 	/**
-	 * Returns the list of all time segments
+	 * Returns the list of time segments of all filtered tasks which are
+	 * loaded. Time segments in a specific time range are added to this list by
+	 * loadTimeSegments.
 	 *
-	 * @return the list of all time segments
+	 * @return the list of loaded time segments
 	 */
 	public ObservableList<TimeSegmentAdapter> getTimeSegments() {
 		return timeSegments;
 	}
 
+	/**
+	 * Adds time segments of all filtered tasks overlapping a time range (e.g.
+	 * the visible part of the time graph) to the time segments list, loading
+	 * their tasks if necessary. If the range is outside the previously loaded
+	 * range, the range is extended by its length on both sides, so that small
+	 * scrolls don't query the database. The loaded range is remembered, and
+	 * time segments of tasks which match the filters later are loaded as well.
+	 *
+	 * @param startTime the range start time
+	 * @param endTime the range end time
+	 */
+	public void loadTimeSegments(Date startTime, Date endTime) {
+		try {
+			reloadLock.writeLock().lock();
+			if (timeSegmentsRangeStart != null && !startTime.before(timeSegmentsRangeStart) && !endTime.after(timeSegmentsRangeEnd))
+				return;
+			long rangeLength = Math.max(endTime.getTime() - startTime.getTime(), 0);
+			timeSegmentsRangeStart = new Date(startTime.getTime() - rangeLength);
+			timeSegmentsRangeEnd = new Date(endTime.getTime() + rangeLength);
+			loadTimeSegmentsRange();
+		} finally {
+			reloadLock.writeLock().unlock();
+		}
+	}
+
 	/**
 	 * Returns the list of all custom fields
 	 *
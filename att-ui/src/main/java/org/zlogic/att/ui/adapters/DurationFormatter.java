@@ -23,12 +23,13 @@ public class DurationFormatter {
 	private static final MessageFormat format = new MessageFormat(ResourceBundle.getBundle("org/zlogic/att/ui/adapters/messages").getString("{0,NUMBER,0}:{1,NUMBER,00}:{2,NUMBER,00}"));
 
 	/**
-	 * Returns a formatted duration
+	 * Returns a formatted duration. Synchronized because the formatter is
+	 * shared and reports are filled in several threads.
 	 *
 	 * @param duration the duration to format
 	 * @return the formatted duration
 	 */
-	public static String formatDuration(Duration duration) {
+	public static synchronized String formatDuration(Duration duration) {
 		long hours = duration.toHours();
 		long minutes = duration.toMinutes() - duration.toHours() * 60;
 		long seconds = duration.getSeconds() - duration.toMinutes() * 60;
@@ -5,10 +5,14 @@
  */
 package org.zlogic.att.ui.adapters;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.List;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.beans.property.BooleanProperty;
@@ -22,7 +26,9 @@ import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javax.persistence.EntityManager;
+import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.Task;
+import org.zlogic.att.data.TaskSummary;
 import org.zlogic.att.data.TimeSegment;
 import org.zlogic.att.data.TransactedChange;
 
@@ -43,9 +49,22 @@ public class TaskAdapter {
 	 */
 	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/att/ui/adapters/messages");
 	/**
-	 * Assigned entity
+	 * Interval between full recomputes of the running time totals (used as a
+	 * consistency check)
+	 */
+	private static final Duration TIMES_RECOMPUTE_INTERVAL = Duration.ofMinutes(1);
+	/**
+	 * Assigned entity (null until the task is loaded from its summary)
 	 */
 	private Task task;
+	/**
+	 * Assigned summary, used until the entity is loaded
+	 */
+	private TaskSummary summary;
+	/**
+	 * Summary computed from the loaded entity, reset when the entity is changed
+	 */
+	private TaskSummary currentSummary;
 	/*
 	 * Java FX properties (some are extracted directly, some are generated on-the-fly)
 	 */
@@ -81,6 +100,34 @@ public class TaskAdapter {
 	 * Property to indicate if the task is currently timing
 	 */
 	private BooleanProperty timingProperty = new SimpleBooleanProperty(false);
+	/*
+	 * Running time totals of the loaded entity, updated from TimeSegment changes
+	 */
+	/**
+	 * Running total time of all TimeSegments
+	 */
+	private Duration runningTotalTime = Duration.ZERO;
+	/**
+	 * Running earliest start time of all TimeSegments
+	 */
+	private Date runningFirstTime;
+	/**
+	 * Running latest end time of all TimeSegments
+	 */
+	private Date runningLastTime;
+	/**
+	 * Number of TimeSegments included in the running totals
+	 */
+	private int runningSegmentsCount;
+	/**
+	 * True if the running earliest or latest time is no longer valid and a full
+	 * recompute is required
+	 */
+	private boolean runningTimesInvalid = true;
+	/**
+	 * Time of the last full recompute of the running totals
+	 */
+	private Instant lastTimesRecompute;
 	/**
 	 * DataManager reference
 	 */
@@ -108,8 +155,9 @@ public class TaskAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTask(getDataManager().getPersistenceHelper().getTaskFromDatabase(getTask().getId(), entityManager));
+						setTask(findTask(entityManager));
 						getTask().setDescription(newValue);
+						invalidateCurrentSummary();
 					}
 				}.setNewValue(newValue));
 				updateFxProperties();
@@ -136,8 +184,9 @@ public class TaskAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTask(getDataManager().getPersistenceHelper().getTaskFromDatabase(getTask().getId(), entityManager));
+						setTask(findTask(entityManager));
 						getTask().setName(newValue);
+						invalidateCurrentSummary();
 					}
 				}.setNewValue(newValue));
 				updateFxProperties();
@@ -162,8 +211,9 @@ public class TaskAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTask(getDataManager().getPersistenceHelper().getTaskFromDatabase(getTask().getId(), entityManager));
+						setTask(findTask(entityManager));
 						getTask().setCompleted(newValue);
+						invalidateCurrentSummary();
 					}
 				}.setNewValue(newValue));
 				updateFxProperties();
@@ -179,13 +229,22 @@ public class TaskAdapter {
 	 * @param dataManager the DataManager reference
 	 */
 	public TaskAdapter(Task task, DataManager dataManager) {
-		this.task = task;
 		this.dataManager = dataManager;
+		setTask(task);
 
-		//Populate time segments
-		for (TimeSegment timeSegment : task.getTimeSegments())
-			if (dataManager.findTimeSegmentAdapter(timeSegment) == null)
-				this.dataManager.addTimeSegmentAdapter(new TimeSegmentAdapter(timeSegment, this, this.dataManager));
+		updateFxProperties();
+	}
+
+	/**
+	 * Creates a TaskAdapter instance from a task summary. The Task entity and
+	 * its time segments will be loaded on first use.
+	 *
+	 * @param summary the associated task summary
+	 * @param dataManager the DataManager reference
+	 */
+	public TaskAdapter(TaskSummary summary, DataManager dataManager) {
+		this.summary = summary;
+		this.dataManager = dataManager;
 
 		updateFxProperties();
 	}
@@ -197,7 +256,7 @@ public class TaskAdapter {
 		getDataManager().getPersistenceHelper().performTransactedChange(new TransactedChange() {
 			@Override
 			public void performChange(EntityManager entityManager) {
-				setTask(getDataManager().getPersistenceHelper().getTaskFromDatabase(getTask().getId(), entityManager));
+				setTask(findTask(entityManager));
 			}
 		});
 		updateFxProperties();
@@ -239,6 +298,7 @@ public class TaskAdapter {
 	 * @return the associated time segments property
 	 */
 	public ObservableList<TimeSegmentAdapter> timeSegmentsProperty() {
+		getTask();
 		return timeSegments;
 	}
 
@@ -285,21 +345,167 @@ public class TaskAdapter {
 	 */
 
 	/**
-	 * Returns the associated Task entity
+	 * Returns the associated Task entity, loading it from the database if the
+	 * adapter was created from a task summary
 	 *
 	 * @return the associated Task entity
 	 */
 	public Task getTask() {
+		if (task == null) {
+			setTask(getDataManager().getPersistenceHelper().getTaskFromDatabase(summary.getId()));
+			updateFxProperties();
+		}
 		return task;
 	}
 
 	/**
-	 * Changes the associated Task entity
+	 * Assigns a Task entity loaded by DataManager, if the entity is not yet
+	 * loaded
+	 *
+	 * @param task the loaded Task entity
+	 */
+	protected void setLoadedTask(Task task) {
+		if (this.task != null)
+			return;
+		setTask(task);
+		updateFxProperties();
+	}
+
+	/**
+	 * Replaces the task summary, used while the Task entity is not loaded
+	 *
+	 * @param summary the updated task summary
+	 */
+	protected void setSummary(TaskSummary summary) {
+		this.summary = summary;
+		if (task == null)
+			updateFxProperties();
+	}
+
+	/**
+	 * Returns a task summary reflecting the current state of this task. If the
+	 * Task entity is loaded, the summary is computed from the entity and kept
+	 * until the entity is changed. Not thread-safe: should be called from the
+	 * thread which changes the task (DataManager takes all summaries before
+	 * filtering them in parallel).
+	 *
+	 * @return the task summary
+	 */
+	protected TaskSummary getCurrentSummary() {
+		if (task == null)
+			return summary;
+		if (currentSummary == null)
+			currentSummary = new TaskSummary(task);
+		return currentSummary;
+	}
+
+	/**
+	 * Resets the summary computed from the loaded entity, should be called
+	 * when the entity is changed
+	 */
+	protected void invalidateCurrentSummary() {
+		currentSummary = null;
+	}
+
+	/**
+	 * Returns true if the task summary's clipped total time was computed for
+	 * the specified clip times
+	 *
+	 * @param clipStartTime the clip start time (or null if not limited)
+	 * @param clipEndTime the clip end time (or null if not limited)
+	 * @return true if the task summary was clipped by the same times
+	 */
+	protected boolean isSummaryClippedBy(Date clipStartTime, Date clipEndTime) {
+		return summary != null && Objects.equals(clipStartTime, summary.getClipStartTime()) && Objects.equals(clipEndTime, summary.getClipEndTime());
+	}
+
+	/**
+	 * Returns true if the Task entity and its time segments are loaded
+	 *
+	 * @return true if the Task entity is loaded
+	 */
+	public boolean isLoaded() {
+		return task != null;
+	}
+
+	/**
+	 * Returns the task ID
+	 *
+	 * @return the task ID
+	 */
+	public long getId() {
+		return task != null ? task.getId() : summary.getId();
+	}
+
+	/**
+	 * Returns a custom field value, without loading the Task entity
+	 *
+	 * @param customField the custom field
+	 * @return the custom field value
+	 */
+	public String getCustomField(CustomField customField) {
+		return task != null ? task.getCustomField(customField) : summary.getCustomField(customField);
+	}
+
+	/**
+	 * Removes the value of a deleted custom field from the loaded entity,
+	 * without reloading it from the database. The task summary is not
+	 * changed, since values of deleted custom fields are never requested.
+	 *
+	 * @param customField the deleted custom field
+	 */
+	protected void removeCustomField(CustomField customField) {
+		if (task != null)
+			task.setCustomField(customField, null);
+		invalidateCurrentSummary();
+	}
+
+	/**
+	 * Returns the total time of this task, without loading the Task entity
+	 *
+	 * @return the total time of this task
+	 */
+	public Duration getTotalTime() {
+		if (task == null)
+			return summary.getTotalTime();
+		updateRunningTimes();
+		return runningTotalTime;
+	}
+
+	/**
+	 * Returns the total time of this task, clipped by start and end times. The
+	 * Task entity is loaded only if the summary was clipped by different times.
+	 *
+	 * @param clipStartTime the clip start time (or null if not limited)
+	 * @param clipEndTime the clip end time (or null if not limited)
+	 * @return the clipped total time of this task
+	 */
+	public Duration getTotalTime(Date clipStartTime, Date clipEndTime) {
+		if (task == null && isSummaryClippedBy(clipStartTime, clipEndTime))
+			return summary.getClippedTotalTime();
+		return getTask().getTotalTime(clipStartTime, clipEndTime);
+	}
+
+	/**
+	 * Changes the associated Task entity. Creates time segment adapters if the
+	 * entity is assigned for the first time, and passes the entity's time
+	 * segment instances to their adapters.
 	 *
 	 * @param task the new (or updated) task
 	 */
 	private void setTask(Task task) {
+		boolean firstLoad = this.task == null;
 		this.task = task;
+		invalidateCurrentSummary();
+		for (TimeSegment timeSegment : task.getTimeSegments()) {
+			TimeSegmentAdapter timeSegmentAdapter = dataManager.findTimeSegmentAdapter(timeSegment);
+			if (timeSegmentAdapter != null) {
+				if (timeSegmentAdapter.ownerTaskProperty().get() == this)
+					timeSegmentAdapter.setOwnerTimeSegment(timeSegment);
+			}
+			else if (firstLoad)
+				dataManager.addTimeSegmentAdapter(new TimeSegmentAdapter(timeSegment, this, dataManager));
+		}
 	}
 	//TODO: other Getters/setters
 
@@ -315,6 +521,23 @@ public class TaskAdapter {
 		return dataManager;
 	}
 
+	/**
+	 * Fetches the latest version of the associated entity inside an existing
+	 * transaction. If a time segment of this task is timing, its in-memory end
+	 * time is kept (and written to the database with the transaction).
+	 *
+	 * @param entityManager the EntityManager which will be used for lookup
+	 * @return the fetched entity
+	 */
+	private Task findTask(EntityManager entityManager) {
+		Task foundTask = getDataManager().getPersistenceHelper().getTaskFromDatabase(getId(), entityManager);
+		TimeSegmentAdapter timingSegment = getDataManager().timingSegmentProperty().get();
+		if (foundTask != null && timingSegment != null && timingSegment.ownerTaskProperty().get() == this)
+			for (TimeSegment foundSegment : foundTask.getTimeSegments())
+				timingSegment.applyTimingEndTime(foundSegment);
+		return foundTask;
+	}
+
 	/**
 	 * Updates Java FX properties from the associated entity
 	 */
@@ -324,9 +547,9 @@ public class TaskAdapter {
 		this.name.removeListener(nameChangeListener);
 		this.completed.removeListener(completedChangeListener);
 		//Perform update
-		description.setValue(task.getDescription());
-		name.setValue(task.getName());
-		completed.setValue(task.getCompleted());
+		description.setValue(task != null ? task.getDescription() : summary.getDescription());
+		name.setValue(task != null ? task.getName() : summary.getName());
+		completed.setValue(task != null ? task.getCompleted() : summary.getCompleted());
 		updateTimeSegments();
 		updateTimeProperty();
 		//Restore listeners
@@ -339,18 +562,21 @@ public class TaskAdapter {
 	 * Updated the timeSegments array from the entity
 	 */
 	protected void updateTimeSegments() {
-		List<TimeSegmentAdapter> orphanedSegments = new LinkedList<>();
+		if (task == null)
+			return;
+		Set<TimeSegmentAdapter> orphanedSegments = new HashSet<>();
 		for (TimeSegmentAdapter segment : timeSegments)
 			if (!task.getTimeSegments().contains(segment.getTimeSegment()))
 				orphanedSegments.add(segment);
 		timeSegments.removeAll(orphanedSegments);
+		Set<TimeSegmentAdapter> existingSegments = new HashSet<>(timeSegments);
 		for (TimeSegment segment : task.getTimeSegments()) {
 			TimeSegmentAdapter segmentAdapter = dataManager.findTimeSegmentAdapter(segment);
 			if (segmentAdapter == null) {
 				log.log(Level.SEVERE, messages.getString("CANNOT_FIND_TIME_SEGMENT_DURING_UPDATETIMESEGMENTS"), new Object[]{segment.getId(), segment.getDescription()});
 				continue;
 			}
-			if (!timeSegments.contains(segmentAdapter))
+			if (existingSegments.add(segmentAdapter))
 				timeSegments.add(segmentAdapter);
 		}
 	}
@@ -359,39 +585,104 @@ public class TaskAdapter {
 	 * Updates time-associated (generated) properties
 	 */
 	protected void updateTimeProperty() {
-		firstTime.setValue(getEarliestTime());
-		lastTime.setValue(getLatestTime());
-		totalTime.setValue(DurationFormatter.formatDuration(task.getTotalTime()));
+		if (task == null) {
+			firstTime.setValue(summary.getFirstTime());
+			lastTime.setValue(summary.getLastTime());
+			totalTime.setValue(DurationFormatter.formatDuration(summary.getTotalTime()));
+			return;
+		}
+		updateRunningTimes();
+		firstTime.setValue(runningFirstTime);
+		lastTime.setValue(runningLastTime);
+		totalTime.setValue(DurationFormatter.formatDuration(runningTotalTime));
 	}
 
 	/**
-	 * Searches for the earliest registered time for this task (earliest Start
-	 * time of all TimeSegments)
+	 * Updates the running time totals after a TimeSegment's times were changed.
+	 * Null old times mean that the segment was added to this task, null new
+	 * times mean that the segment was removed from this task. Should be called
+	 * before the entity is updated from database; the time properties are
+	 * updated by the next call to updateTimeProperty().
 	 *
-	 * @return the earliest registered time for this task or null if task has no
-	 * TimeSegments
+	 * @param oldStartTime the segment's previous start time
+	 * @param oldEndTime the segment's previous end time
+	 * @param newStartTime the segment's new start time
+	 * @param newEndTime the segment's new end time
+	 */
+	protected void updateSegmentTimes(Date oldStartTime, Date oldEndTime, Date newStartTime, Date newEndTime) {
+		invalidateCurrentSummary();
+		if (task == null || runningTimesInvalid)
+			return;
+		if (oldStartTime != null && oldEndTime != null) {
+			runningTotalTime = runningTotalTime.minus(Duration.ofMillis(oldEndTime.getTime() - oldStartTime.getTime()));
+			runningSegmentsCount--;
+			//Shrinking the earliest or latest time requires a full recompute
+			if (runningFirstTime != null && oldStartTime.getTime() == runningFirstTime.getTime() && (newStartTime == null || newStartTime.after(oldStartTime)))
+				runningTimesInvalid = true;
+			if (runningLastTime != null && oldEndTime.getTime() == runningLastTime.getTime() && (newEndTime == null || newEndTime.before(oldEndTime)))
+				runningTimesInvalid = true;
+		}
+		if (newStartTime != null && newEndTime != null) {
+			runningTotalTime = runningTotalTime.plus(Duration.ofMillis(newEndTime.getTime() - newStartTime.getTime()));
+			runningSegmentsCount++;
+			if (runningFirstTime == null || newStartTime.before(runningFirstTime))
+				runningFirstTime = newStartTime;
+			if (runningLastTime == null || newEndTime.after(runningLastTime))
+				runningLastTime = newEndTime;
+		}
+	}
+
+	/**
+	 * Recomputes the running time totals from the entity's TimeSegments if
+	 * they're invalid, out of sync with the entity or if the periodic
+	 * consistency check is due
 	 */
-	private Date getEarliestTime() {
-		Date firstDate = null;
-		for (TimeSegment segment : task.getTimeSegments())
-			if (firstDate == null || segment.getStartTime().before(firstDate))
-				firstDate = segment.getStartTime();
-		return firstDate;
+	private void updateRunningTimes() {
+		if (runningTimesInvalid
+				|| runningSegmentsCount != task.getTimeSegments().size()
+				|| lastTimesRecompute == null
+				|| !Instant.now().isBefore(lastTimesRecompute.plus(TIMES_RECOMPUTE_INTERVAL)))
+			recomputeRunningTimes();
 	}
 
 	/**
-	 * Searches for the latest registered time for this task (latest End time of
-	 * all TimeSegments)
-	 *
-	 * @return the latest registered time for this task or null if task has no
-	 * TimeSegments
+	 * Recomputes the running time totals by iterating through all TimeSegments
+	 * of the entity
 	 */
-	private Date getLatestTime() {
+	private void recomputeRunningTimes() {
+		Duration total = Duration.ZERO;
+		Date firstDate = null;
 		Date lastDate = null;
-		for (TimeSegment segment : task.getTimeSegments())
+		for (TimeSegment segment : task.getTimeSegments()) {
+			total = total.plus(segment.getDuration());
+			if (firstDate == null || segment.getStartTime().before(firstDate))
+				firstDate = segment.getStartTime();
 			if (lastDate == null || segment.getEndTime().after(lastDate))
 				lastDate = segment.getEndTime();
-		return lastDate;
+		}
+		if (!runningTimesInvalid && runningSegmentsCount == task.getTimeSegments().size()
+				&& (!total.equals(runningTotalTime) || !isSameTime(firstDate, runningFirstTime) || !isSameTime(lastDate, runningLastTime)))
+			log.log(Level.FINE, messages.getString("RUNNING_TIME_TOTALS_OF_TASK_WERE_OUT_OF_SYNC"), getId());
+		runningTotalTime = total;
+		runningFirstTime = firstDate;
+		runningLastTime = lastDate;
+		runningSegmentsCount = task.getTimeSegments().size();
+		runningTimesInvalid = false;
+		lastTimesRecompute = Instant.now();
+	}
+
+	/**
+	 * Returns true if both dates are null or represent the same time (also
+	 * works for java.sql.Timestamp)
+	 *
+	 * @param date1 the first date
+	 * @param date2 the second date
+	 * @return true if both dates represent the same time
+	 */
+	private boolean isSameTime(Date date1, Date date2) {
+		if (date1 == null || date2 == null)
+			return date1 == date2;
+		return date1.getTime() == date2.getTime();
 	}
 
 	/**
@@ -402,6 +693,7 @@ public class TaskAdapter {
 	 */
 	public TimeSegmentAdapter createTimeSegment() {
 		TimeSegmentAdapter newSegment = dataManager.createTimeSegment(this);
+		updateSegmentTimes(null, null, newSegment.getTimeSegment().getStartTime(), newSegment.getTimeSegment().getEndTime());
 		updateFromDatabase();
 		return newSegment;
 	}
@@ -13,6 +13,10 @@ import java.util.Objects;
 import java.util.ResourceBundle;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
@@ -40,6 +44,10 @@ import org.zlogic.att.ui.TimerRapidFiringDetector;
  */
 public class TimeSegmentAdapter {
 
+	/**
+	 * The logger
+	 */
+	private final static Logger log = Logger.getLogger(TimeSegmentAdapter.class.getName());
 	/**
 	 * Localization messages
 	 */
@@ -48,6 +56,11 @@ public class TimeSegmentAdapter {
 	 * Assigned entity
 	 */
 	private TimeSegment segment;
+	/**
+	 * The owner task's instance of the assigned entity (may be a different
+	 * copy than segment), updated whenever the owner's entity is assigned
+	 */
+	private TimeSegment ownerTimeSegment;
 	/*
 	 * Java FX
 	 */
@@ -87,6 +100,16 @@ public class TimeSegmentAdapter {
 	 * Property to indicate if the segment is currently timing
 	 */
 	private BooleanProperty timingProperty = new SimpleBooleanProperty(false);
+	/**
+	 * The time when the end time was last written to the database while timing
+	 * (updated from the database writer thread)
+	 */
+	private volatile Instant lastPersistedEndTime;
+	/**
+	 * Result of the last queued end time write, used to avoid queueing a write
+	 * while the previous one is not committed yet
+	 */
+	private CompletableFuture<Void> endTimePersistResult;
 	/*
 	 * Change listeners
 	 */
@@ -109,7 +132,7 @@ public class TimeSegmentAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTimeSegment(entityManager.find(TimeSegment.class, getTimeSegment().getId()));
+						setTimeSegment(findTimeSegment(entityManager));
 						getTimeSegment().setDescription(newValue);
 					}
 				}.setNewValue(newValue));
@@ -136,10 +159,11 @@ public class TimeSegmentAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTimeSegment(entityManager.find(TimeSegment.class, getTimeSegment().getId()));
+						setTimeSegment(findTimeSegment(entityManager));
 						getTimeSegment().setStartTime(newValue);
 					}
 				}.setNewValue(newValue));
+				ownerTaskProperty().get().updateSegmentTimes(oldValue, getTimeSegment().getEndTime(), newValue, getTimeSegment().getEndTime());
 				ownerTaskProperty().get().updateFromDatabase();
 				updateFxProperties();
 				getDataManager().signalTaskUpdate();
@@ -172,10 +196,11 @@ public class TimeSegmentAdapter {
 
 						@Override
 						public void performChange(EntityManager entityManager) {
-							setTimeSegment(entityManager.find(TimeSegment.class, getTimeSegment().getId()));
+							setTimeSegment(findTimeSegment(entityManager));
 							getTimeSegment().setEndTime(newValue);
 						}
 					}.setNewValue(newValue));
+					ownerTaskProperty().get().updateSegmentTimes(getTimeSegment().getStartTime(), oldValue, getTimeSegment().getStartTime(), newValue);
 					ownerTaskProperty().get().updateFromDatabase();
 					updateFxProperties();
 					getDataManager().signalTaskUpdate();
@@ -211,8 +236,8 @@ public class TimeSegmentAdapter {
 
 					@Override
 					public void performChange(EntityManager entityManager) {
-						setTimeSegment(entityManager.find(TimeSegment.class, getTimeSegment().getId()));
-						Task newTask = entityManager.find(Task.class, newValue.getTask().getId());
+						setTimeSegment(findTimeSegment(entityManager));
+						Task newTask = entityManager.find(Task.class, newValue.getId());
 						getTimeSegment().setOwner(newTask);
 					}
 				}.setNewValue(newValue));
@@ -221,6 +246,8 @@ public class TimeSegmentAdapter {
 					oldValue.isTimingProperty().set(false);
 					newValue.isTimingProperty().bind(isTimingProperty());
 				}
+				oldValue.updateSegmentTimes(getTimeSegment().getStartTime(), getTimeSegment().getEndTime(), null, null);
+				newValue.updateSegmentTimes(null, null, getTimeSegment().getStartTime(), getTimeSegment().getEndTime());
 				oldValue.updateFromDatabase();
 				newValue.updateFromDatabase();
 				oldValue.nameProperty().removeListener(ownerTaskNameListener);
@@ -249,6 +276,7 @@ public class TimeSegmentAdapter {
 	 */
 	public TimeSegmentAdapter(TimeSegment segment, TaskAdapter ownerTask, DataManager dataManager) {
 		this.segment = segment;
+		this.ownerTimeSegment = segment;
 		this.dataManager = dataManager;
 		this.ownerTask.setValue(ownerTask);
 
@@ -267,6 +295,7 @@ public class TimeSegmentAdapter {
 	 */
 	public void setStartEndTime(Date startTime, Date endTime) {
 		Duration previousTime = segment.getDuration();
+		Date previousStartTime = segment.getStartTime(), previousEndTime = segment.getEndTime();
 		dataManager.getPersistenceHelper().performTransactedChange(new TransactedChange() {
 			private Date startTime, endTime;
 
@@ -278,20 +307,24 @@ public class TimeSegmentAdapter {
 
 			@Override
 			public void performChange(EntityManager entityManager) {
-				setTimeSegment(entityManager.find(TimeSegment.class, getTimeSegment().getId()));
+				setTimeSegment(findTimeSegment(entityManager));
 				getTimeSegment().setStartEndTime(startTime, endTime);
 			}
 		}.setParameters(startTime, endTime));
+		ownerTask.get().updateSegmentTimes(previousStartTime, previousEndTime, segment.getStartTime(), segment.getEndTime());
 		getDataManager().addFilteredTotalTime(segment.getDuration().minus(previousTime));
 		updateFxProperties();
 	}
 
 	/**
-	 * Starts timing this segment
+	 * Starts timing this segment. While timing, the end time is only updated
+	 * in memory and written to the database every
+	 * DataManager.getTimingPersistInterval().
 	 */
 	public void startTiming() {
 		ownerTask.get().isTimingProperty().bind(timingProperty);
 		timingProperty.set(true);
+		lastPersistedEndTime = Instant.now();
 		if (timer != null)
 			timer.cancel();
 		//Start the timer
@@ -305,21 +338,105 @@ public class TimeSegmentAdapter {
 					if (timerMissedEventConsumer.isRapidFiring())
 						return;
 					if (isTimingProperty().get())
-						endProperty.setValue(new Date());
+						updateTimingEndTime(new Date());
 				}
 			};
-			private ObjectProperty<Date> endProperty;
 
-			public TimerTask setEndProperty(ObjectProperty<Date> endProperty) {
-				this.endProperty = endProperty;
+			@Override
+			public void run() {
+				Platform.runLater(task);
+			}
+		}, 0, 1000);
+	}
+
+	/**
+	 * Updates the end time of the timing segment in memory. Queues a write of
+	 * the end time to the database only if the persist interval has elapsed
+	 * since the last write and no write is pending.
+	 *
+	 * @param endTime the new end time
+	 */
+	private void updateTimingEndTime(Date endTime) {
+		Date previousEndTime = segment.getEndTime();
+		if (endTime.before(segment.getStartTime()))
+			return;
+		segment.setEndTime(endTime);
+		//Update the owner's copy of this segment
+		if (ownerTimeSegment != segment)
+			ownerTimeSegment.setEndTime(endTime);
+		ownerTask.get().updateSegmentTimes(segment.getStartTime(), previousEndTime, segment.getStartTime(), endTime);
+		ownerTask.get().updateTimeProperty();
+		updateFxProperties();
+		getDataManager().signalTaskUpdate();
+		getDataManager().addFilteredTotalTime(Duration.between(previousEndTime.toInstant(), endTime.toInstant()));
+
+		if (endTimePersistResult != null && !endTimePersistResult.isDone())
+			return;
+		if (lastPersistedEndTime == null || !Instant.now().isBefore(lastPersistedEndTime.plus(getDataManager().getTimingPersistInterval())))
+			persistEndTime();
+	}
+
+	/**
+	 * Queues a write of the in-memory end time to the database. Used to flush
+	 * the end time of a timing segment. The time of the last write is updated
+	 * only after the transaction is committed.
+	 */
+	public void persistEndTime() {
+		endTimePersistResult = dataManager.getPersistenceHelper().performTransactedChangeAsync(new TransactedChange() {
+			private long id;
+			private Date endTime;
+
+			public TransactedChange setEndTime(long id, Date endTime) {
+				this.id = id;
+				this.endTime = endTime;
+				return this;
+			}
+
+			@Override
+			public void performChange(EntityManager entityManager) {
+				TimeSegment foundSegment = entityManager.find(TimeSegment.class, id);
+				if (foundSegment != null)
+					foundSegment.setEndTime(endTime);
+			}
+		}.setEndTime(segment.getId(), new Date(segment.getEndTime().getTime())));
+		endTimePersistResult.thenRun(new Runnable() {
+			private Instant persistTime;
+
+			public Runnable setPersistTime(Instant persistTime) {
+				this.persistTime = persistTime;
 				return this;
 			}
 
 			@Override
 			public void run() {
-				Platform.runLater(task);
+				lastPersistedEndTime = persistTime;
+			}
+		}.setPersistTime(Instant.now())).exceptionally(new Function<Throwable, Void>() {
+			@Override
+			public Void apply(Throwable ex) {
+				//Ignore the exception if we are shutting down
+				if (!(ex.getCause() instanceof ApplicationShuttingDownException) || !dataManager.getPersistenceHelper().isShuttingDown())
+					log.log(Level.SEVERE, messages.getString("CANNOT_SAVE_TIMING_END_TIME"), ex);
+				return null;
 			}
-		}.setEndProperty(endProperty()), 0, 1000);
+		});
+	}
+
+	/**
+	 * Applies the in-memory end time of a timing segment to a copy of the
+	 * entity loaded inside a transaction, so that the end time which was not
+	 * written to the database yet is written together with the transaction
+	 * (instead of being replaced by the outdated database value). The time of
+	 * the last write is not changed, since the transaction may still fail;
+	 * only persistEndTime updates it after a successful commit.
+	 *
+	 * @param loadedSegment the copy of the entity loaded inside a transaction
+	 */
+	protected void applyTimingEndTime(TimeSegment loadedSegment) {
+		if (!isTimingProperty().get() || !loadedSegment.equals(segment))
+			return;
+		if (loadedSegment.getEndTime().getTime() != segment.getEndTime().getTime())
+			loadedSegment.setEndTime(segment.getEndTime());
 	}
 
 	/**
@@ -328,6 +445,7 @@ public class TimeSegmentAdapter {
 	public void stopTiming() {
 		timer.cancel();
 		timer = null;
+		lastPersistedEndTime = null;
 		endProperty().setValue(new Date());
 		timingProperty.set(false);
 		dataManager.timingSegmentProperty().set(null);
@@ -421,11 +539,35 @@ public class TimeSegmentAdapter {
 	private void setTimeSegment(TimeSegment segment) {
 		this.segment = segment;
 	}
+
+	/**
+	 * Sets the owner task's instance of the associated entity, should be
+	 * called when the owner's Task entity is assigned
+	 *
+	 * @param ownerTimeSegment the owner task's instance of the associated
+	 * entity
+	 */
+	protected void setOwnerTimeSegment(TimeSegment ownerTimeSegment) {
+		this.ownerTimeSegment = ownerTimeSegment;
+	}
 	//TODO: other Getters/setters
 
 	/*
 	 * Internal methods
 	 */
+	/**
+	 * Fetches the latest version of the associated entity inside an existing
+	 * transaction, keeping the in-memory end time if the segment is timing
+	 *
+	 * @param entityManager the EntityManager which will be used for lookup
+	 * @return the fetched entity
+	 */
+	private TimeSegment findTimeSegment(EntityManager entityManager) {
+		TimeSegment foundSegment = entityManager.find(TimeSegment.class, getTimeSegment().getId());
+		applyTimingEndTime(foundSegment);
+		return foundSegment;
+	}
+
 	/**
 	 * Returns the DataManager reference
 	 *
@@ -7,8 +7,9 @@ package org.zlogic.att.ui.report;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -22,12 +23,15 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.beans.property.DoubleProperty;
@@ -35,30 +39,35 @@ import javafx.beans.property.SimpleDoubleProperty;
 import net.sf.dynamicreports.jasper.builder.JasperReportBuilder;
 import net.sf.dynamicreports.jasper.builder.export.Exporters;
 import net.sf.dynamicreports.jasper.builder.export.JasperHtmlExporterBuilder;
-import net.sf.dynamicreports.jasper.builder.export.JasperPdfExporterBuilder;
 import net.sf.dynamicreports.report.base.expression.AbstractSimpleExpression;
 import net.sf.dynamicreports.report.base.expression.AbstractValueFormatter;
 import net.sf.dynamicreports.report.builder.DynamicReports;
+import net.sf.dynamicreports.report.builder.HyperLinkBuilder;
 import net.sf.dynamicreports.report.builder.component.ComponentBuilder;
 import net.sf.dynamicreports.report.builder.component.VerticalListBuilder;
 import net.sf.dynamicreports.report.builder.group.CustomGroupBuilder;
 import net.sf.dynamicreports.report.builder.style.StyleBuilder;
-import net.sf.dynamicreports.report.builder.tableofcontents.TableOfContentsCustomizer;
 import net.sf.dynamicreports.report.constant.HorizontalAlignment;
+import net.sf.dynamicreports.report.constant.HyperLinkType;
 import net.sf.dynamicreports.report.constant.Markup;
 import net.sf.dynamicreports.report.constant.Orientation;
 import net.sf.dynamicreports.report.constant.PageOrientation;
 import net.sf.dynamicreports.report.constant.PageType;
 import net.sf.dynamicreports.report.constant.VerticalAlignment;
+import net.sf.dynamicreports.report.constant.WhenNoDataType;
 import net.sf.dynamicreports.report.definition.ReportParameters;
 import net.sf.dynamicreports.report.definition.expression.DRIExpression;
 import net.sf.dynamicreports.report.exception.DRException;
-import net.sf.jasperreports.engine.JREmptyDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JROrigin;
+import net.sf.jasperreports.engine.JRPrintPage;
+import net.sf.jasperreports.engine.JRStyle;
+import net.sf.jasperreports.engine.JasperExportManager;
+import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
 import org.zlogic.att.data.CustomField;
 import org.zlogic.att.data.Task;
 import org.zlogic.att.data.TimeSegment;
-import org.zlogic.att.data.reporting.DateTools;
 import org.zlogic.att.data.reporting.ReportQuery;
 import org.zlogic.att.ui.ExceptionLogger;
 import org.zlogic.att.ui.adapters.CustomFieldAdapter;
@@ -96,6 +105,14 @@ public class Report {
 	 * Property to indicate the progress (0..1)
 	 */
 	private DoubleProperty progress = new SimpleDoubleProperty(-1);
+	/**
+	 * Number of report generation steps which are completed
+	 */
+	private int completedSteps;
+	/**
+	 * Total number of report generation steps
+	 */
+	private int totalSteps;
 	/**
 	 * Generated report HTML
 	 */
@@ -103,20 +120,15 @@ public class Report {
 	/**
 	 * Generated report
 	 */
-	private JasperReportBuilder report;
+	private JasperPrint reportPrint;
 	/**
-	 * Path for storing images from HTML files
+	 * Cache of generated reports (or null if reports are not cached)
 	 */
-	private Path htmlImagesPath;
+	private ReportCache reportCache;
 	/**
-	 * Formatter to output date and time
+	 * Path for storing images from HTML files
 	 */
-	private AbstractValueFormatter<String, Date> dateTimeFormatter = new AbstractValueFormatter<String, Date>() {
-		@Override
-		public String format(Date value, ReportParameters reportParameters) {
-			return MessageFormat.format(messages.getString("DATE_TIME_FORMAT"), new Object[]{value});
-		}
-	};
+	private Path htmlImagesPath;
 	/**
 	 * Formatter to output a Joda period
 	 */
@@ -146,88 +158,16 @@ public class Report {
 		}
 	};
 	/**
-	 * Expression which prints on the third or later pages - resolves a bug (?)
-	 * where a subreport starts from page 2
+	 * Expression which prints on the second or later pages of a section - the
+	 * first page already has the section's title
 	 */
 	private AbstractSimpleExpression<Boolean> subreportPrintNotInFirstPageExpression = new AbstractSimpleExpression<Boolean>() {
 		@Override
 		public Boolean evaluate(ReportParameters reportParameters) {
-			return reportParameters.getPageNumber() > 2;
+			return reportParameters.getPageNumber() > 1;
 		}
 	};
 
-	/**
-	 * Class to store a date and a time segment
-	 */
-	public class DateTimeSegment {
-
-		/**
-		 * The day start date
-		 */
-		private Date dayStart;
-		/**
-		 * The day end date
-		 */
-		private Date dayEnd;
-		/**
-		 * The times segment
-		 */
-		private TimeSegment timeSegment;
-
-		/**
-		 * Constructor of a DateTimeSegment
-		 *
-		 * @param dayStart the starting date day
-		 * @param dayEnd the ending date day
-		 * @param timeSegment the TimeSegment
-		 */
-		private DateTimeSegment(Date dayStart, Date dayEnd, TimeSegment timeSegment) {
-			this.dayStart = dayStart;
-			this.dayEnd = dayEnd;
-			this.timeSegment = timeSegment;
-		}
-
-		/**
-		 * Returns the date
-		 *
-		 * @return the date
-		 */
-		public Date getDate() {
-			return dayStart;
-		}
-
-		/**
-		 * Returns the time segment
-		 *
-		 * @return the time segment
-		 */
-		public TimeSegment getTimeSegment() {
-			return timeSegment;
-		}
-
-		/**
-		 * Returns the duration of the time segment, clipped with the report's
-		 * Start and End dates, in hours
-		 *
-		 * @return the duration of the time segment
-		 */
-		public double getDurationHours() {
-			Duration period = timeSegment.getClippedDuration(dayStart, dayEnd);
-			return ((double) period.getSeconds()) / 3600;
-		}
-
-		/**
-		 * Returns the duration of the time segment, clipped with the report's
-		 * Start and End dates as a formatted HH:mm:ss string
-		 *
-		 * @return the duration of the time segment
-		 */
-		public String getDuration() {
-			Duration period = timeSegment.getClippedDuration(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-			return DurationFormatter.formatDuration(period);
-		}
-	}
-
 	/**
 	 * Class to store a custom field value and a duration for this custom field
 	 */
@@ -333,6 +273,106 @@ public class Report {
 		}
 	}
 
+	/**
+	 * Class to store a table of contents entry: a section heading and the page
+	 * where the section starts
+	 */
+	public class TableOfContentsEntry {
+
+		/**
+		 * The section heading
+		 */
+		private String heading;
+		/**
+		 * The page where the section starts
+		 */
+		private int page;
+
+		/**
+		 * Constructor of a TableOfContentsEntry
+		 *
+		 * @param heading the section heading
+		 * @param page the page where the section starts
+		 */
+		private TableOfContentsEntry(String heading, int page) {
+			this.heading = heading;
+			this.page = page;
+		}
+
+		/**
+		 * Returns the section heading
+		 *
+		 * @return the section heading
+		 */
+		public String getHeading() {
+			return heading;
+		}
+
+		/**
+		 * Returns the page where the section starts
+		 *
+		 * @return the page where the section starts
+		 */
+		public Integer getPage() {
+			return page;
+		}
+	}
+
+	/**
+	 * Task which builds and fills a report section in the fork-join pool.
+	 * Sections only read the report model, so they are filled concurrently
+	 * and merged by buildReport.
+	 */
+	private abstract class SectionTask extends RecursiveTask<JasperPrint> {
+
+		/**
+		 * Version UID
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The section heading
+		 */
+		private String heading;
+
+		/**
+		 * Constructor of a SectionTask
+		 *
+		 * @param heading the section heading
+		 */
+		private SectionTask(String heading) {
+			this.heading = heading;
+		}
+
+		/**
+		 * Returns the section heading
+		 *
+		 * @return the section heading
+		 */
+		public String getHeading() {
+			return heading;
+		}
+
+		/**
+		 * Builds the section report
+		 *
+		 * @return the section report
+		 */
+		protected abstract JasperReportBuilder buildSection();
+
+		@Override
+		protected JasperPrint compute() {
+			try {
+				JasperPrint sectionPrint = buildSection()
+						.setPageFormat(PageType.A4, PageOrientation.PORTRAIT)
+						.toJasperPrint();
+				stepCompleted();
+				return sectionPrint;
+			} catch (DRException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
 	/**
 	 * Creates a report
 	 *
@@ -434,6 +474,27 @@ public class Report {
 		this.endDate = endDate;
 	}
 
+	/**
+	 * Returns the cache of generated reports
+	 *
+	 * @return the cache of generated reports (or null if reports are not
+	 * cached)
+	 */
+	public ReportCache getReportCache() {
+		return reportCache;
+	}
+
+	/**
+	 * Sets the cache of generated reports. If the cache contains a report for
+	 * the same dates and data version, buildReport will use the cached report.
+	 *
+	 * @param reportCache the cache of generated reports (or null if reports
+	 * should not be cached)
+	 */
+	public void setReportCache(ReportCache reportCache) {
+		this.reportCache = reportCache;
+	}
+
 	/**
 	 * Progress property which indicates completion state of the report
 	 * generation task. Is between [0..1].
@@ -444,6 +505,15 @@ public class Report {
 		return progress;
 	}
 
+	/**
+	 * Marks a report generation step as completed and updates the progress.
+	 * Called from fork-join pool threads when a section is filled.
+	 */
+	private synchronized void stepCompleted() {
+		completedSteps++;
+		progressProperty().set(((double) completedSteps) / totalSteps);
+	}
+
 	/**
 	 * Returns the current locale date format
 	 *
@@ -556,10 +626,11 @@ public class Report {
 	 * Returns the builder for the task's name and custom fields as a vertical
 	 * list
 	 *
+	 * @param customFields the custom fields to show
 	 * @return the builder for the task's name and custom fields as a vertical
 	 * list
 	 */
-	protected VerticalListBuilder getTaskWithCustomFields() {
+	protected VerticalListBuilder getTaskWithCustomFields(List<CustomField> customFields) {
 		//Create title and list
 		StyleBuilder titleStyle = DynamicReports.stl.style()
 				.setBold(true);
@@ -571,7 +642,7 @@ public class Report {
 		StyleBuilder customFieldNameStyle = DynamicReports.stl.style()
 				.setItalic(true);
 		//Add custom columns
-		for (CustomFieldAdapter customField : dataManager.getCustomFields()) {
+		for (CustomField customField : customFields) {
 			//Extract custom field
 			DRIExpression<CustomField> customFieldExpression = new AbstractSimpleExpression<CustomField>() {
 				private CustomField customField;
@@ -585,7 +656,7 @@ public class Report {
 				public CustomField evaluate(ReportParameters rp) {
 					return customField;
 				}
-			}.setCustomField(customField.getCustomField());
+			}.setCustomField(customField);
 			//Build the column
 			customFieldsList = customFieldsList
 					.add(
@@ -600,106 +671,67 @@ public class Report {
 	 * Builds a report on all time segments: every time segment's task,
 	 * description, start and end time
 	 *
-	 * @param timeSegments the list of time segments
+	 * @param timeSegmentRows the time segment rows
 	 * @return the report on time segments
 	 */
-	protected JasperReportBuilder buildTimeSegmentsReport(List<TimeSegment> timeSegments) {
-		AbstractSimpleExpression<Date> startTimeExpression = new AbstractSimpleExpression<Date>() {
-			@Override
-			public Date evaluate(ReportParameters rp) {
-				TimeSegment timeSegment = rp.getFieldValue("timeSegment"); //NOI18N
-				Date clippedStartDate = timeSegment.getClippedStartTime(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-				if (clippedStartDate != null)
-					return clippedStartDate;
-				else
-					return null;
-			}
-		};
-		AbstractSimpleExpression<Date> endTimeExpression = new AbstractSimpleExpression<Date>() {
-			@Override
-			public Date evaluate(ReportParameters rp) {
-				TimeSegment timeSegment = rp.getFieldValue("timeSegment"); //NOI18N
-				Date clippedEndDate = timeSegment.getClippedEndTime(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-				if (clippedEndDate != null)
-					return clippedEndDate;
-				else
-					return null;
-			}
-		};
+	protected JasperReportBuilder buildTimeSegmentsReport(List<ReportModel.TimeSegmentRow> timeSegmentRows) {
 		String header = messages.getString("FULL_TIME_REPORT");
 		return DynamicReports.report()
 				.pageHeader(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()).setPrintWhenExpression(subreportPrintNotInFirstPageExpression))
-				.title(DynamicReports.cmp.text(header).setTableOfContentsHeading(header).setStyle(getPageHeaderStyle()))
-				.addField(DynamicReports.field("timeSegment", Date.class)) //NOI18N
-				.sortBy(DynamicReports.asc(startTimeExpression))
+				.title(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()))
+				.sortBy(DynamicReports.asc("startTime", Date.class)) //NOI18N
 				.columns(
-						DynamicReports.col.column(messages.getString("TASK"), "owner.name", DynamicReports.type.stringType()), //NOI18N
+						DynamicReports.col.column(messages.getString("TASK"), "taskName", DynamicReports.type.stringType()), //NOI18N
 						DynamicReports.col.column(messages.getString("SPECIFICS"), "description", DynamicReports.type.stringType()), //NOI18N
-						DynamicReports.col.column(messages.getString("START_TIME"), startTimeExpression).setValueFormatter(dateTimeFormatter).setHorizontalAlignment(HorizontalAlignment.RIGHT),
-						DynamicReports.col.column(messages.getString("END_TIME"), endTimeExpression).setValueFormatter(dateTimeFormatter).setHorizontalAlignment(HorizontalAlignment.RIGHT))
+						DynamicReports.col.column(messages.getString("START_TIME"), "startTimeText", DynamicReports.type.stringType()).setHorizontalAlignment(HorizontalAlignment.RIGHT), //NOI18N
+						DynamicReports.col.column(messages.getString("END_TIME"), "endTimeText", DynamicReports.type.stringType()).setHorizontalAlignment(HorizontalAlignment.RIGHT)) //NOI18N
 				.setHighlightDetailEvenRows(true)
 				.setColumnTitleStyle(getColumnTitleStyle())
-				.setDataSource(new JRBeanCollectionDataSource(timeSegments));
+				.setDataSource(new JRBeanCollectionDataSource(timeSegmentRows));
 	}
 
 	/**
 	 * Builds a report on all tasks: every task's name, description, custom
 	 * fields and total time
 	 *
-	 * @param tasks the list of tasks
+	 * @param taskRows the task rows
+	 * @param customFields the custom fields to show for every task
 	 * @return the report on tasks
 	 */
-	protected JasperReportBuilder buildTasksReport(List<Task> tasks) {
-		AbstractSimpleExpression<Date> startTimeExpression = new AbstractSimpleExpression<Date>() {
-			@Override
-			public Date evaluate(ReportParameters rp) {
-				Task task = rp.getFieldValue("task"); //NOI18N
-				Date earliestStartDate = null;
-				for (TimeSegment timeSegment : task.getTimeSegments()) {
-					Date taskStartDate = timeSegment.getClippedStartTime(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-					earliestStartDate = (earliestStartDate == null || (taskStartDate != null && timeSegment.getStartTime().before(earliestStartDate))) ? taskStartDate : earliestStartDate;
-				}
-				return earliestStartDate;
-			}
-		};
-		AbstractSimpleExpression<Duration> totalTimeExpression = new AbstractSimpleExpression<Duration>() {
-			@Override
-			public Duration evaluate(ReportParameters rp) {
-				Task task = rp.getFieldValue("task"); //NOI18N
-				return task.getTotalTime(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-			}
-		};
+	protected JasperReportBuilder buildTasksReport(List<ReportModel.TaskRow> taskRows, List<CustomField> customFields) {
 		String header = messages.getString("TASKS");
 		return DynamicReports.report()
 				.pageHeader(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()).setPrintWhenExpression(subreportPrintNotInFirstPageExpression))
-				.title(DynamicReports.cmp.text(header).setTableOfContentsHeading(header).setStyle(getPageHeaderStyle()))
+				.title(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()))
 				.addField(DynamicReports.field("task", Task.class)) //NOI18N
-				.sortBy(DynamicReports.asc(startTimeExpression))
-				.sortBy(DynamicReports.desc(totalTimeExpression))
+				.sortBy(DynamicReports.asc("startTime", Date.class)) //NOI18N
+				.sortBy(DynamicReports.desc("totalTime", Duration.class)) //NOI18N
 				.columns(
-						DynamicReports.col.componentColumn(messages.getString("TASK"), getTaskWithCustomFields()),
+						DynamicReports.col.componentColumn(messages.getString("TASK"), getTaskWithCustomFields(customFields)),
 						//DynamicReports.col.column("Task", "name", DynamicReports.type.stringType()),
 						DynamicReports.col.column(messages.getString("DESCRIPTION"), "description", DynamicReports.type.stringType()), //NOI18N
-						DynamicReports.col.column(messages.getString("TOTAL_TIME"), totalTimeExpression).setValueFormatter(periodFormatter).setHorizontalAlignment(HorizontalAlignment.RIGHT))
+						DynamicReports.col.column(messages.getString("TOTAL_TIME"), "totalTimeText", DynamicReports.type.stringType()).setHorizontalAlignment(HorizontalAlignment.RIGHT)) //NOI18N
 				.setHighlightDetailEvenRows(true)
 				.setColumnTitleStyle(getColumnTitleStyle())
-				.setDataSource(new JRBeanCollectionDataSource(tasks));
+				.setDataSource(new JRBeanCollectionDataSource(taskRows));
 	}
 
 	/**
 	 * Builds a report on a custom field: the list of custom field values and
-	 * the total for associated task. Creates a table and a pie chart.
+	 * the total for associated task. Creates a table and a pie chart. Uses the
+	 * task totals precomputed by ReportModel, so time segments are not walked
+	 * again for every custom field.
 	 *
-	 * @param tasks the list of tasks
+	 * @param taskRows the task rows
 	 * @param customField the custom field
 	 * @return the report on a custom field
 	 */
-	protected JasperReportBuilder buildCustomFieldReport(List<Task> tasks, CustomField customField) {
+	protected JasperReportBuilder buildCustomFieldReport(List<ReportModel.TaskRow> taskRows, CustomField customField) {
 		//Prepare value-time map
 		Map<String, CustomFieldTime> customFieldData = new TreeMap<>();
-		for (Task task : tasks) {
-			Duration duration = task.getTotalTime(DateTools.getInstance().convertDateToStartOfDay(startDate), DateTools.getInstance().convertDateToEndOfDay(endDate));
-			String customFieldValue = task.getCustomField(customField);
+		for (ReportModel.TaskRow taskRow : taskRows) {
+			Duration duration = taskRow.getTotalTime();
+			String customFieldValue = taskRow.getTask().getCustomField(customField);
 			customFieldValue = customFieldValue != null ? customFieldValue : ""; //NOI18N
 			if (customFieldData.containsKey(customFieldValue))
 				customFieldData.get(customFieldValue).addDuration(duration);
@@ -710,7 +742,7 @@ public class Report {
 		String header = MessageFormat.format(messages.getString("STATISTICS_HEADER"), new Object[]{customField.getCustomField().getName()});
 		return DynamicReports.report()
 				.pageHeader(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()).setPrintWhenExpression(subreportPrintNotInFirstPageExpression))
-				.title(DynamicReports.cmp.text(header).setTableOfContentsHeading(header).setStyle(getPageHeaderStyle()))
+				.title(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()))
 				.addField(DynamicReports.field("group", Date.class)) //NOI18N
 				.summary(
 						DynamicReports.cht.barChart()
@@ -730,75 +762,89 @@ public class Report {
 				.setSummaryWithPageHeaderAndFooter(true);
 	}
 
-	/**
-	 * Builds a report on all custom fields's values.
-	 *
-	 * @param tasks the list of tasks
-	 * @return the report on custom fields
-	 */
-	protected JasperReportBuilder buildCustomFieldsReport(List<Task> tasks) {
-		List<ComponentBuilder> customFieldReports = new LinkedList<>();
-		for (CustomFieldAdapter customField : dataManager.getCustomFields()) {
-			customFieldReports.add(DynamicReports.cmp.pageBreak());
-			customFieldReports.add(
-					DynamicReports.cmp.subreport(
-							buildCustomFieldReport(tasks, customField.getCustomField())));
-		}
-		return DynamicReports.report()
-				//.pageHeader(DynamicReports.cmp.text(messages.getString("STATISTICS")).setStyle(getPageHeaderStyle()))
-				.detail(customFieldReports.toArray(new ComponentBuilder[0]))
-				.setDataSource(new JREmptyDataSource());
-	}
-
 	/**
 	 * Builds a timesheet report: a list of all time segments for every day
 	 *
-	 * @param timeSegments the list of time segments
+	 * @param timesheetRows the timesheet rows
 	 * @return the timesheet report
 	 */
-	protected JasperReportBuilder buildTimesheetReport(List<TimeSegment> timeSegments) {
-		//Date-TimeSegment association list
-		List<DateTimeSegment> dataSource = new LinkedList<>();
-		{
-			for (LocalDate localDate = startDate; !localDate.isAfter(endDate); localDate = localDate.plusDays(1)) {
-				Date dayStart = DateTools.getInstance().convertDateToStartOfDay(localDate);
-				Date dayEnd = DateTools.getInstance().convertDateToEndOfDay(localDate);
-				for (TimeSegment timeSegment : timeSegments)
-					if (!timeSegment.getClippedDuration(dayStart, dayEnd).equals(Duration.ZERO))
-						dataSource.add(new DateTimeSegment(dayStart, dayEnd, timeSegment));
-			}
-		}
-
+	protected JasperReportBuilder buildTimesheetReport(List<ReportModel.TimesheetRow> timesheetRows) {
 		//Style for day headers
 		StyleBuilder dayHeaderStyle = DynamicReports.stl.style()
 				.setBold(true)
 				.setAlignment(HorizontalAlignment.CENTER, VerticalAlignment.MIDDLE);
 
-		AbstractSimpleExpression<String> dateTitleExpression = new AbstractSimpleExpression<String>() {
-			@Override
-			public String evaluate(ReportParameters rp) {
-				Date date = rp.getFieldValue("date"); //NOI18N
-				return MessageFormat.format(messages.getString("DATE_FORMAT"), new Object[]{date});
-			}
-		};
-		CustomGroupBuilder dateGroup = DynamicReports.grp.group(dateTitleExpression)
+		CustomGroupBuilder dateGroup = DynamicReports.grp.group("dateText", String.class) //NOI18N
 				.setStyle(dayHeaderStyle)
 				.setPadding(0)
 				.setAddToTableOfContents(false);
 		String header = messages.getString("TIMESHEET");
 		return DynamicReports.report()
 				.pageHeader(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()).setPrintWhenExpression(subreportPrintNotInFirstPageExpression))
-				.title(DynamicReports.cmp.text(header).setTableOfContentsHeading(header).setStyle(getPageHeaderStyle()))
+				.title(DynamicReports.cmp.text(header).setStyle(getPageHeaderStyle()))
 				.columns(
-						DynamicReports.col.column(messages.getString("TASK"), "timeSegment.owner.name", DynamicReports.type.stringType()), //NOI18N
-						DynamicReports.col.column(messages.getString("SPECIFICS"), "timeSegment.description", DynamicReports.type.stringType()), //NOI18N
+						DynamicReports.col.column(messages.getString("TASK"), "taskName", DynamicReports.type.stringType()), //NOI18N
+						DynamicReports.col.column(messages.getString("SPECIFICS"), "description", DynamicReports.type.stringType()), //NOI18N
 						//DynamicReports.col.column("Duration", "duration", DynamicReports.type.stringType()),
 						DynamicReports.col.column(messages.getString("HOURS"), "durationHours", DynamicReports.type.doubleType())) //NOI18N
 				.groupBy(dateGroup)
 				.sortBy(DynamicReports.asc("date", Date.class)) //NOI18N
 				.setHighlightDetailEvenRows(true)
 				.setColumnTitleStyle(getColumnTitleStyle())
-				.setDataSource(new JRBeanCollectionDataSource(dataSource));
+				.setDataSource(new JRBeanCollectionDataSource(timesheetRows));
+	}
+
+	/**
+	 * Builds the first pages of the report: the title and the table of
+	 * contents. Every entry links to the page where its section starts.
+	 *
+	 * @param tableOfContents the table of contents entries
+	 * @param lastPage true if the last section has no pages and the last page
+	 * footer should be printed on the table of contents
+	 * @return the title and table of contents report
+	 */
+	protected JasperReportBuilder buildTableOfContentsReport(List<TableOfContentsEntry> tableOfContents, boolean lastPage) {
+		HyperLinkBuilder sectionLink = DynamicReports.hyperLink()
+				.setPage(DynamicReports.field("page", Integer.class).build()) //NOI18N
+				.setType(HyperLinkType.LOCAL_PAGE);
+		StyleBuilder sectionLinkStyle = DynamicReports.stl.style()
+				.setUnderline(true);
+		JasperReportBuilder report = DynamicReports.report()
+				.setPageFormat(PageType.A4, PageOrientation.PORTRAIT)
+				.title(
+						getTitle(),
+						DynamicReports.cmp.verticalGap(20),
+						DynamicReports.cmp.text(messages.getString("TABLE_OF_CONTENTS")).setStyle(getTableTitleStyle()),
+						DynamicReports.cmp.verticalGap(10))
+				.detail(
+						DynamicReports.cmp.horizontalList(
+								DynamicReports.cmp.text(DynamicReports.field("heading", String.class)).setStyle(sectionLinkStyle).setHyperLink(sectionLink), //NOI18N
+								DynamicReports.cmp.text(DynamicReports.field("page", Integer.class)).setFixedWidth(60).setHorizontalAlignment(HorizontalAlignment.RIGHT).setHyperLink(sectionLink))) //NOI18N
+				.setWhenNoDataType(WhenNoDataType.ALL_SECTIONS_NO_DETAIL)
+				.setDataSource(new JRBeanCollectionDataSource(tableOfContents));
+		if (lastPage)
+			report = report.lastPageFooter(getLastFooter());
+		return report;
+	}
+
+	/**
+	 * Creates the table of contents for filled sections. Sections without any
+	 * pages are skipped.
+	 *
+	 * @param sections the filled sections
+	 * @param tableOfContentsPages the number of pages before the first section
+	 * @return the table of contents entries
+	 */
+	private List<TableOfContentsEntry> createTableOfContents(List<SectionTask> sections, int tableOfContentsPages) {
+		List<TableOfContentsEntry> tableOfContents = new LinkedList<>();
+		int page = tableOfContentsPages + 1;
+		for (SectionTask section : sections) {
+			int sectionPages = section.getRawResult().getPages().size();
+			if (sectionPages > 0)
+				tableOfContents.add(new TableOfContentsEntry(section.getHeading(), page));
+			page += sectionPages;
+		}
+		return tableOfContents;
 	}
 
 	/**
@@ -811,23 +857,41 @@ public class Report {
 	}
 
 	/**
-	 * Saves report to PDF
+	 * Saves report to PDF. The report filled by buildReport is exported
+	 * without filling it again.
 	 *
 	 * @param outputFile destination file
-	 * @throws FileNotFoundException if path is incorrect
+	 * @throws IOException if the file cannot be written
 	 * @throws DRException when an internal error occurs
 	 */
-	public void savePdfReport(File outputFile) throws FileNotFoundException, DRException {
-		JasperPdfExporterBuilder pdfExporter = Exporters.pdfExporter(outputFile);
-		report.toPdf(pdfExporter);
+	public void savePdfReport(File outputFile) throws IOException, DRException {
+		try (OutputStream stream = new FileOutputStream(outputFile)) {
+			JasperExportManager.exportReportToPdfStream(reportPrint, stream);
+		} catch (JRException ex) {
+			throw new DRException(ex);
+		}
 	}
 
 	/**
 	 * Builds the report in DynamicReports form; prepares an HTML report for
-	 * preview. Only the time between startDate and endDate will be used.
+	 * preview. Only the time between startDate and endDate will be used. If
+	 * the report cache has a report for the same dates and data, the cached
+	 * report is used instead. Sections are filled concurrently in the
+	 * fork-join pool and appended after the table of contents.
 	 */
 	public void buildReport() {
 		try {
+			//Use the cached report if data wasn't changed, including changes which are still queued
+			dataManager.getPersistenceHelper().awaitQueuedChanges();
+			long dataVersion = dataManager.getPersistenceHelper().getDataVersion();
+			ReportCache.CachedReport cachedReport = reportCache != null ? reportCache.get(startDate, endDate, dataVersion) : null;
+			if (cachedReport != null) {
+				reportPrint = cachedReport.getJasperPrint();
+				reportHTML = cachedReport.getReportHTML();
+				progressProperty().set(1);
+				return;
+			}
+
 			//Get data
 			//progressProperty().set(0);
 			progressProperty().set(-1);
@@ -835,11 +899,77 @@ public class Report {
 			reportQuery.setStartDate(startDate);
 			reportQuery.setEndDate(endDate);
 			List<TimeSegment> timeSegments = reportQuery.queryTimeSegments();
-			List<Task> tasks = reportQuery.queryTasks();
+			List<Task> tasks = reportQuery.queryTasks(timeSegments);
+			final ReportModel reportModel = new ReportModel(startDate, endDate, tasks, timeSegments);
+			//Sections are filled outside of this thread, so they use a copy of the custom fields list
+			final List<CustomField> customFields = new ArrayList<>();
+			for (CustomFieldAdapter customField : dataManager.getCustomFields())
+				customFields.add(customField.getCustomField());
+
+			//Prepare sections, each one starts on a new page
+			List<SectionTask> sections = new ArrayList<>();
+			sections.add(new SectionTask(messages.getString("TASKS")) {
+				@Override
+				protected JasperReportBuilder buildSection() {
+					return buildTasksReport(reportModel.getTaskRows(), customFields);
+				}
+			});
+			for (CustomField customField : customFields)
+				sections.add(new SectionTask(MessageFormat.format(messages.getString("STATISTICS_HEADER"), new Object[]{customField.getName()})) {
+					private CustomField customField;
+
+					public SectionTask setCustomField(CustomField customField) {
+						this.customField = customField;
+						return this;
+					}
+
+					@Override
+					protected JasperReportBuilder buildSection() {
+						return buildCustomFieldReport(reportModel.getTaskRows(), customField);
+					}
+				}.setCustomField(customField));
+			sections.add(new SectionTask(messages.getString("FULL_TIME_REPORT")) {
+				@Override
+				protected JasperReportBuilder buildSection() {
+					return buildTimeSegmentsReport(reportModel.getTimeSegmentRows());
+				}
+			});
+			sections.add(new SectionTask(messages.getString("TIMESHEET")) {
+				@Override
+				protected JasperReportBuilder buildSection() {
+					return buildTimesheetReport(reportModel.getTimesheetRows()).lastPageFooter(getLastFooter());
+				}
+			});
+			//Steps are the data query, every section and the merged report
+			synchronized (this) {
+				completedSteps = 0;
+				totalSteps = sections.size() + 2;
+			}
+			stepCompleted();
+
+			//Fill sections concurrently
+			ForkJoinTask.invokeAll(sections);
+
+			//Fill the title and table of contents, the page numbers depend on its number of pages
+			boolean lastSectionEmpty = sections.get(sections.size() - 1).getRawResult().getPages().isEmpty();
+			JasperReportBuilder report = buildTableOfContentsReport(createTableOfContents(sections, 1), lastSectionEmpty);
+			reportPrint = report.toJasperPrint();
+			if (reportPrint.getPages().size() != 1) {
+				report = buildTableOfContentsReport(createTableOfContents(sections, reportPrint.getPages().size()), lastSectionEmpty);
+				reportPrint = report.toJasperPrint();
+			}
+			//Append sections
+			for (SectionTask section : sections) {
+				JasperPrint sectionPrint = section.getRawResult();
+				for (JRStyle style : sectionPrint.getStyles())
+					reportPrint.addStyle(style, true);
+				for (JROrigin origin : sectionPrint.getOrigins())
+					reportPrint.addOrigin(origin);
+				for (JRPrintPage page : sectionPrint.getPages())
+					reportPrint.addPage(page);
+			}
 
-			//Build the report
-			//progressProperty().set(0.2);
-			//Prepare exporter
+			//Export to HTML
 			ByteArrayOutputStream stream = new ByteArrayOutputStream();
 			JasperHtmlExporterBuilder htmlExporter
 					= Exporters.htmlExporter(stream)
@@ -847,34 +977,13 @@ public class Report {
 					.setImagesURI(getHTMLImagesDir().toUri().toString())
 					.setImagesDirName(getHTMLImagesDir().toString())
 					.setUsingImagesToAlign(false);
-
-			//Table of contents after title
-			TableOfContentsCustomizer tableOfContentsAfterTitle = new TableOfContentsCustomizer() {
-				@Override
-				public void customize() {
-					report.title(
-							getTitle(),
-							DynamicReports.cmp.verticalGap(20));
-					super.customize();
-				}
-			};
-			//Prepare full report
-			report = DynamicReports.report()
-					.setPageFormat(PageType.A4, PageOrientation.PORTRAIT)
-					.tableOfContents(tableOfContentsAfterTitle)
-					.detail(
-							DynamicReports.cmp.verticalGap(20),
-							DynamicReports.cmp.subreport(buildTasksReport(tasks)),
-							DynamicReports.cmp.subreport(buildCustomFieldsReport(tasks)),
-							DynamicReports.cmp.pageBreak(),
-							DynamicReports.cmp.subreport(buildTimeSegmentsReport(timeSegments)),
-							DynamicReports.cmp.pageBreak(),
-							DynamicReports.cmp.subreport(buildTimesheetReport(timeSegments)))
-					.lastPageFooter(getLastFooter())
-					.setDataSource(new JREmptyDataSource())
-					.toHtml(htmlExporter);
+			//The builder keeps its filled report, so the appended sections are exported as well
+			report.toHtml(htmlExporter);
 			reportHTML = stream.toString("utf-8"); //NOI18N
-		} catch (UnsupportedEncodingException | DRException ex) {
+			if (reportCache != null)
+				reportCache.put(startDate, endDate, dataVersion, reportPrint, reportHTML);
+			stepCompleted();
+		} catch (UnsupportedEncodingException | DRException | JRException ex) {
 			Logger.getLogger(Report.class.getName()).log(Level.SEVERE, null, ex);
 			ExceptionLogger.getInstance().showException(null, ex);
 		} catch (Throwable ex) {
@@ -0,0 +1,157 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.report;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import net.sf.jasperreports.engine.JasperPrint;
+
+/**
+ * Cache of generated reports, keyed by the report dates and the data version
+ * (see PersistenceHelper.getDataVersion). Any committed change increments the
+ * data version, so cached reports never show outdated data. Only the most
+ * recently used reports are kept. Thread-safe.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class ReportCache {
+
+	/**
+	 * Maximum number of cached reports
+	 */
+	private static final int MAX_CACHED_REPORTS = 4;
+
+	/**
+	 * A cached report
+	 */
+	public static class CachedReport {
+
+		/**
+		 * The filled report
+		 */
+		private final JasperPrint jasperPrint;
+		/**
+		 * The report in HTML form
+		 */
+		private final String reportHTML;
+
+		/**
+		 * Constructs a CachedReport
+		 *
+		 * @param jasperPrint the filled report
+		 * @param reportHTML the report in HTML form
+		 */
+		private CachedReport(JasperPrint jasperPrint, String reportHTML) {
+			this.jasperPrint = jasperPrint;
+			this.reportHTML = reportHTML;
+		}
+
+		/**
+		 * Returns the filled report
+		 *
+		 * @return the filled report
+		 */
+		public JasperPrint getJasperPrint() {
+			return jasperPrint;
+		}
+
+		/**
+		 * Returns the report in HTML form
+		 *
+		 * @return the report in HTML form
+		 */
+		public String getReportHTML() {
+			return reportHTML;
+		}
+	}
+
+	/**
+	 * Key of a cached report
+	 */
+	private static class ReportKey {
+
+		/**
+		 * The report start date
+		 */
+		private final LocalDate startDate;
+		/**
+		 * The report end date
+		 */
+		private final LocalDate endDate;
+		/**
+		 * The data version used to generate the report
+		 */
+		private final long dataVersion;
+
+		/**
+		 * Constructs a ReportKey
+		 *
+		 * @param startDate the report start date
+		 * @param endDate the report end date
+		 * @param dataVersion the data version used to generate the report
+		 */
+		private ReportKey(LocalDate startDate, LocalDate endDate, long dataVersion) {
+			this.startDate = startDate;
+			this.endDate = endDate;
+			this.dataVersion = dataVersion;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ReportKey))
+				return false;
+			ReportKey key = (ReportKey) obj;
+			return Objects.equals(startDate, key.startDate) && Objects.equals(endDate, key.endDate) && dataVersion == key.dataVersion;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(startDate, endDate, dataVersion);
+		}
+	}
+	/**
+	 * The cached reports, in access order (least recently used first)
+	 */
+	private final Map<ReportKey, CachedReport> cachedReports = new LinkedHashMap<ReportKey, CachedReport>(MAX_CACHED_REPORTS + 1, 1.0f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ReportKey, CachedReport> eldest) {
+			return size() > MAX_CACHED_REPORTS;
+		}
+	};
+
+	/**
+	 * Returns a cached report
+	 *
+	 * @param startDate the report start date
+	 * @param endDate the report end date
+	 * @param dataVersion the current data version
+	 * @return the cached report, or null if the report is not cached
+	 */
+	public synchronized CachedReport get(LocalDate startDate, LocalDate endDate, long dataVersion) {
+		return cachedReports.get(new ReportKey(startDate, endDate, dataVersion));
+	}
+
+	/**
+	 * Adds a report to the cache. Reports generated from older data versions
+	 * can't be used anymore and are removed.
+	 *
+	 * @param startDate the report start date
+	 * @param endDate the report end date
+	 * @param dataVersion the data version used to generate the report
+	 * @param jasperPrint the filled report
+	 * @param reportHTML the report in HTML form
+	 */
+	public synchronized void put(LocalDate startDate, LocalDate endDate, long dataVersion, JasperPrint jasperPrint, String reportHTML) {
+		for (Iterator<ReportKey> it = cachedReports.keySet().iterator(); it.hasNext();)
+			if (it.next().dataVersion < dataVersion)
+				it.remove();
+		cachedReports.put(new ReportKey(startDate, endDate, dataVersion), new CachedReport(jasperPrint, reportHTML));
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.report;
+
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.ResourceBundle;
+import org.zlogic.att.data.Task;
+import org.zlogic.att.data.TimeSegment;
+import org.zlogic.att.data.reporting.DateTools;
+import org.zlogic.att.data.reporting.PeriodTimeSegment;
+import org.zlogic.att.data.reporting.TimeSegmentSplitter;
+import org.zlogic.att.ui.adapters.DurationFormatter;
+
+/**
+ * Report data model: rows for every report table, with clipped times,
+ * durations and formatted strings computed once when the model is created.
+ * Report expressions and sorting only read the precomputed row values.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class ReportModel {
+
+	/**
+	 * Localization messages
+	 */
+	private static final ResourceBundle messages = ResourceBundle.getBundle("org/zlogic/att/ui/report/messages");
+
+	/**
+	 * Row of the tasks table
+	 */
+	public static class TaskRow {
+
+		/**
+		 * The task
+		 */
+		private final Task task;
+		/**
+		 * The task name
+		 */
+		private final String name;
+		/**
+		 * The task description
+		 */
+		private final String description;
+		/**
+		 * The earliest start time of the task's time segments, clipped by the
+		 * report dates
+		 */
+		private final Date startTime;
+		/**
+		 * The task's total time, clipped by the report dates
+		 */
+		private final Duration totalTime;
+		/**
+		 * The formatted total time
+		 */
+		private final String totalTimeText;
+
+		/**
+		 * Constructs a TaskRow
+		 *
+		 * @param task the task
+		 * @param startTime the earliest clipped start time
+		 * @param totalTime the clipped total time
+		 */
+		private TaskRow(Task task, Date startTime, Duration totalTime) {
+			this.task = task;
+			this.name = task.getName();
+			this.description = task.getDescription();
+			this.startTime = startTime;
+			this.totalTime = totalTime;
+			this.totalTimeText = DurationFormatter.formatDuration(totalTime);
+		}
+
+		/**
+		 * Returns the task
+		 *
+		 * @return the task
+		 */
+		public Task getTask() {
+			return task;
+		}
+
+		/**
+		 * Returns the task name
+		 *
+		 * @return the task name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the task description
+		 *
+		 * @return the task description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns the earliest start time of the task's time segments, clipped
+		 * by the report dates
+		 *
+		 * @return the earliest clipped start time
+		 */
+		public Date getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the task's total time, clipped by the report dates
+		 *
+		 * @return the clipped total time
+		 */
+		public Duration getTotalTime() {
+			return totalTime;
+		}
+
+		/**
+		 * Returns the formatted total time
+		 *
+		 * @return the formatted total time
+		 */
+		public String getTotalTimeText() {
+			return totalTimeText;
+		}
+	}
+
+	/**
+	 * Row of the time segments table
+	 */
+	public static class TimeSegmentRow {
+
+		/**
+		 * The owner task name
+		 */
+		private final String taskName;
+		/**
+		 * The time segment description
+		 */
+		private final String description;
+		/**
+		 * The start time, clipped by the report dates
+		 */
+		private final Date startTime;
+		/**
+		 * The formatted clipped start time
+		 */
+		private final String startTimeText;
+		/**
+		 * The formatted clipped end time
+		 */
+		private final String endTimeText;
+
+		/**
+		 * Constructs a TimeSegmentRow
+		 *
+		 * @param timeSegment the time segment
+		 * @param startTime the clipped start time
+		 * @param startTimeText the formatted clipped start time
+		 * @param endTimeText the formatted clipped end time
+		 */
+		private TimeSegmentRow(TimeSegment timeSegment, Date startTime, String startTimeText, String endTimeText) {
+			this.taskName = timeSegment.getOwner().getName();
+			this.description = timeSegment.getDescription();
+			this.startTime = startTime;
+			this.startTimeText = startTimeText;
+			this.endTimeText = endTimeText;
+		}
+
+		/**
+		 * Returns the owner task name
+		 *
+		 * @return the owner task name
+		 */
+		public String getTaskName() {
+			return taskName;
+		}
+
+		/**
+		 * Returns the time segment description
+		 *
+		 * @return the time segment description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns the start time, clipped by the report dates
+		 *
+		 * @return the clipped start time
+		 */
+		public Date getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the formatted clipped start time
+		 *
+		 * @return the formatted clipped start time
+		 */
+		public String getStartTimeText() {
+			return startTimeText;
+		}
+
+		/**
+		 * Returns the formatted clipped end time
+		 *
+		 * @return the formatted clipped end time
+		 */
+		public String getEndTimeText() {
+			return endTimeText;
+		}
+	}
+
+	/**
+	 * Row of the timesheet table: the part of a time segment in a single day
+	 */
+	public static class TimesheetRow {
+
+		/**
+		 * The day start
+		 */
+		private final Date date;
+		/**
+		 * The formatted day
+		 */
+		private final String dateText;
+		/**
+		 * The owner task name
+		 */
+		private final String taskName;
+		/**
+		 * The time segment description
+		 */
+		private final String description;
+		/**
+		 * The duration of the time segment in this day, in hours
+		 */
+		private final double durationHours;
+
+		/**
+		 * Constructs a TimesheetRow
+		 *
+		 * @param dayTimeSegment the part of the time segment in this day
+		 * @param dateText the formatted day
+		 */
+		private TimesheetRow(PeriodTimeSegment dayTimeSegment, String dateText) {
+			this.date = dayTimeSegment.getPeriodStart();
+			this.dateText = dateText;
+			this.taskName = dayTimeSegment.getTimeSegment().getOwner().getName();
+			this.description = dayTimeSegment.getTimeSegment().getDescription();
+			this.durationHours = ((double) dayTimeSegment.getClippedDuration().getSeconds()) / 3600;
+		}
+
+		/**
+		 * Returns the day start
+		 *
+		 * @return the day start
+		 */
+		public Date getDate() {
+			return date;
+		}
+
+		/**
+		 * Returns the formatted day
+		 *
+		 * @return the formatted day
+		 */
+		public String getDateText() {
+			return dateText;
+		}
+
+		/**
+		 * Returns the owner task name
+		 *
+		 * @return the owner task name
+		 */
+		public String getTaskName() {
+			return taskName;
+		}
+
+		/**
+		 * Returns the time segment description
+		 *
+		 * @return the time segment description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns the duration of the time segment in this day, in hours
+		 *
+		 * @return the duration in hours
+		 */
+		public double getDurationHours() {
+			return durationHours;
+		}
+	}
+	/**
+	 * Rows of the tasks table
+	 */
+	private final List<TaskRow> taskRows;
+	/**
+	 * Rows of the time segments table
+	 */
+	private final List<TimeSegmentRow> timeSegmentRows;
+	/**
+	 * Rows of the timesheet table
+	 */
+	private final List<TimesheetRow> timesheetRows;
+
+	/**
+	 * Creates the report model
+	 *
+	 * @param startDate the report start date
+	 * @param endDate the report end date
+	 * @param tasks the tasks returned by the report query
+	 * @param timeSegments the time segments returned by the report query
+	 */
+	public ReportModel(LocalDate startDate, LocalDate endDate, List<Task> tasks, List<TimeSegment> timeSegments) {
+		long clipStartTime = DateTools.getInstance().convertDateToStartOfDay(startDate).getTime();
+		long clipEndTime = DateTools.getInstance().convertDateToEndOfDay(endDate).getTime();
+		MessageFormat dateTimeFormat = new MessageFormat(messages.getString("DATE_TIME_FORMAT"));
+		MessageFormat dateFormat = new MessageFormat(messages.getString("DATE_FORMAT"));
+
+		List<TaskRow> newTaskRows = new ArrayList<>(tasks.size());
+		for (Task task : tasks) {
+			Date earliestStartTime = null;
+			Duration totalTime = Duration.ZERO;
+			for (TimeSegment timeSegment : task.getTimeSegments()) {
+				long clippedStartTime = Math.max(timeSegment.getStartTime().getTime(), clipStartTime);
+				long clippedEndTime = Math.min(timeSegment.getEndTime().getTime(), clipEndTime);
+				if (clippedStartTime > clippedEndTime)
+					continue;
+				if (earliestStartTime == null || clippedStartTime < earliestStartTime.getTime())
+					earliestStartTime = new Date(clippedStartTime);
+				totalTime = totalTime.plusMillis(clippedEndTime - clippedStartTime);
+			}
+			newTaskRows.add(new TaskRow(task, earliestStartTime, totalTime));
+		}
+		taskRows = Collections.unmodifiableList(newTaskRows);
+
+		List<TimeSegmentRow> newTimeSegmentRows = new ArrayList<>(timeSegments.size());
+		for (TimeSegment timeSegment : timeSegments) {
+			long clippedStartTime = Math.max(timeSegment.getStartTime().getTime(), clipStartTime);
+			long clippedEndTime = Math.min(timeSegment.getEndTime().getTime(), clipEndTime);
+			Date clippedStartDate = clippedStartTime <= clippedEndTime ? new Date(clippedStartTime) : null;
+			Date clippedEndDate = clippedStartTime <= clippedEndTime ? new Date(clippedEndTime) : null;
+			newTimeSegmentRows.add(new TimeSegmentRow(
+					timeSegment,
+					clippedStartDate,
+					clippedStartDate != null ? dateTimeFormat.format(new Object[]{clippedStartDate}) : null,
+					clippedEndDate != null ? dateTimeFormat.format(new Object[]{clippedEndDate}) : null));
+		}
+		timeSegmentRows = Collections.unmodifiableList(newTimeSegmentRows);
+
+		List<TimesheetRow> newTimesheetRows = new ArrayList<>();
+		Date formattedDate = null;
+		String formattedDateText = null;
+		for (PeriodTimeSegment dayTimeSegment : new TimeSegmentSplitter(startDate, endDate, Period.ofDays(1)).split(timeSegments)) {
+			//Days are sorted, format each day only once
+			if (!dayTimeSegment.getPeriodStart().equals(formattedDate)) {
+				formattedDate = dayTimeSegment.getPeriodStart();
+				formattedDateText = dateFormat.format(new Object[]{formattedDate});
+			}
+			newTimesheetRows.add(new TimesheetRow(dayTimeSegment, formattedDateText));
+		}
+		timesheetRows = Collections.unmodifiableList(newTimesheetRows);
+	}
+
+	/**
+	 * Returns the rows of the tasks table
+	 *
+	 * @return the rows of the tasks table
+	 */
+	public List<TaskRow> getTaskRows() {
+		return taskRows;
+	}
+
+	/**
+	 * Returns the rows of the time segments table
+	 *
+	 * @return the rows of the time segments table
+	 */
+	public List<TimeSegmentRow> getTimeSegmentRows() {
+		return timeSegmentRows;
+	}
+
+	/**
+	 * Returns the rows of the timesheet table
+	 *
+	 * @return the rows of the timesheet table
+	 */
+	public List<TimesheetRow> getTimesheetRows() {
+		return timesheetRows;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.timegraph;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory index of time intervals (e.g. TimeSegmentGraphics locations).
+ * Supports overlap queries in logarithmic time. Items are stored in a
+ * randomized search tree (treap) ordered by start time and augmented with the
+ * maximum end time. Not thread-safe.
+ * <p>
+ * Only used for the time graph's visible range lookups; task totals and
+ * first/last times are maintained as running totals in TaskAdapter, and
+ * report totals are computed by the database.
+ *
+ * @param <T> the indexed item type
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class IntervalIndex<T> {
+
+	/**
+	 * Class for storing an indexed interval
+	 *
+	 * @param <T> the indexed item type
+	 */
+	private static class Interval<T> {
+
+		/**
+		 * The indexed item
+		 */
+		private final T item;
+		/**
+		 * The start time in milliseconds
+		 */
+		private final long start;
+		/**
+		 * The end time in milliseconds
+		 */
+		private final long end;
+		/**
+		 * Insertion sequence number, used to order intervals with equal times
+		 */
+		private final long sequence;
+
+		/**
+		 * Constructs an Interval
+		 *
+		 * @param item the indexed item
+		 * @param start the start time in milliseconds
+		 * @param end the end time in milliseconds
+		 * @param sequence the insertion sequence number
+		 */
+		private Interval(T item, long start, long end, long sequence) {
+			this.item = item;
+			this.start = start;
+			this.end = end;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Tree node
+	 *
+	 * @param <T> the indexed item type
+	 */
+	private static class Node<T> {
+
+		/**
+		 * The interval stored in this node
+		 */
+		private final Interval<T> interval;
+		/**
+		 * The node key (start time)
+		 */
+		private final long key;
+		/**
+		 * The random heap priority
+		 */
+		private final int priority;
+		/**
+		 * The left child
+		 */
+		private Node<T> left;
+		/**
+		 * The right child
+		 */
+		private Node<T> right;
+		/**
+		 * Maximum end time in this subtree
+		 */
+		private long maxEnd;
+
+		/**
+		 * Constructs a Node
+		 *
+		 * @param interval the interval stored in this node
+		 * @param key the node key
+		 * @param priority the random heap priority
+		 */
+		private Node(Interval<T> interval, long key, int priority) {
+			this.interval = interval;
+			this.key = key;
+			this.priority = priority;
+			update();
+		}
+
+		/**
+		 * Updates the subtree aggregates from the children
+		 */
+		private void update() {
+			maxEnd = interval.end;
+			if (left != null)
+				maxEnd = Math.max(maxEnd, left.maxEnd);
+			if (right != null)
+				maxEnd = Math.max(maxEnd, right.maxEnd);
+		}
+
+		/**
+		 * Returns true if this node is ordered before a key/sequence pair
+		 *
+		 * @param key the key
+		 * @param sequence the sequence number
+		 * @return true if this node is ordered before key/sequence
+		 */
+		private boolean isBefore(long key, long sequence) {
+			return this.key < key || (this.key == key && interval.sequence < sequence);
+		}
+	}
+	/**
+	 * Indexed intervals, item=key
+	 */
+	private final Map<T, Interval<T>> intervals = new HashMap<>();
+	/**
+	 * Tree ordered by start time
+	 */
+	private Node<T> startTree;
+	/**
+	 * Random generator for node priorities
+	 */
+	private final Random random = new Random();
+	/**
+	 * Next insertion sequence number
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * Adds an item to the index, or updates its times if it's already indexed
+	 *
+	 * @param item the item to add
+	 * @param start the item's start time
+	 * @param end the item's end time
+	 */
+	public void put(T item, Date start, Date end) {
+		remove(item);
+		Interval<T> interval = new Interval<>(item, start.getTime(), end.getTime(), nextSequence++);
+		intervals.put(item, interval);
+		startTree = insert(startTree, new Node<>(interval, interval.start, random.nextInt()));
+	}
+
+	/**
+	 * Removes an item from the index
+	 *
+	 * @param item the item to remove
+	 * @return true if the item was indexed
+	 */
+	public boolean remove(T item) {
+		Interval<T> interval = intervals.remove(item);
+		if (interval == null)
+			return false;
+		startTree = delete(startTree, interval.start, interval.sequence);
+		return true;
+	}
+
+	/**
+	 * Removes all items from the index
+	 */
+	public void clear() {
+		intervals.clear();
+		startTree = null;
+	}
+
+	/**
+	 * Returns all items overlapping a time range (item start is before the
+	 * range end, and item end is after the range start), ordered by start
+	 * time
+	 *
+	 * @param start the range start time
+	 * @param end the range end time
+	 * @return the overlapping items
+	 */
+	public List<T> getOverlapping(Date start, Date end) {
+		List<T> result = new LinkedList<>();
+		collectOverlapping(startTree, start.getTime(), end.getTime(), result);
+		return result;
+	}
+
+	/*
+	 * Internal methods
+	 */
+	/**
+	 * Collects items overlapping a time range from the start time tree
+	 *
+	 * @param node the subtree root
+	 * @param rangeStart the range start time
+	 * @param rangeEnd the range end time
+	 * @param result the list receiving the overlapping items
+	 */
+	private void collectOverlapping(Node<T> node, long rangeStart, long rangeEnd, List<T> result) {
+		if (node == null || node.maxEnd <= rangeStart)
+			return;
+		collectOverlapping(node.left, rangeStart, rangeEnd, result);
+		if (node.key >= rangeEnd)
+			return;
+		if (node.interval.end > rangeStart)
+			result.add(node.interval.item);
+		collectOverlapping(node.right, rangeStart, rangeEnd, result);
+	}
+
+	/**
+	 * Inserts a node into a tree
+	 *
+	 * @param tree the tree
+	 * @param node the node to insert
+	 * @return the new tree root
+	 */
+	private Node<T> insert(Node<T> tree, Node<T> node) {
+		List<Node<T>> parts = split(tree, node.key, node.interval.sequence);
+		return merge(merge(parts.get(0), node), parts.get(1));
+	}
+
+	/**
+	 * Deletes a node from a tree
+	 *
+	 * @param tree the tree
+	 * @param key the node key
+	 * @param sequence the node sequence number
+	 * @return the new tree root
+	 */
+	private Node<T> delete(Node<T> tree, long key, long sequence) {
+		List<Node<T>> parts = split(tree, key, sequence);
+		List<Node<T>> rightParts = split(parts.get(1), key, sequence + 1);
+		return merge(parts.get(0), rightParts.get(1));
+	}
+
+	/**
+	 * Splits a tree into nodes ordered before a key/sequence pair and the
+	 * remaining nodes
+	 *
+	 * @param tree the tree
+	 * @param key the split key
+	 * @param sequence the split sequence number
+	 * @return a list containing the left and right trees
+	 */
+	private List<Node<T>> split(Node<T> tree, long key, long sequence) {
+		List<Node<T>> parts = new ArrayList<>(2);
+		if (tree == null) {
+			parts.add(null);
+			parts.add(null);
+		} else if (tree.isBefore(key, sequence)) {
+			List<Node<T>> rightParts = split(tree.right, key, sequence);
+			tree.right = rightParts.get(0);
+			tree.update();
+			parts.add(tree);
+			parts.add(rightParts.get(1));
+		} else {
+			List<Node<T>> leftParts = split(tree.left, key, sequence);
+			tree.left = leftParts.get(1);
+			tree.update();
+			parts.add(leftParts.get(0));
+			parts.add(tree);
+		}
+		return parts;
+	}
+
+	/**
+	 * Merges two trees; all nodes of the left tree must be ordered before the
+	 * right tree
+	 *
+	 * @param left the left tree
+	 * @param right the right tree
+	 * @return the merged tree root
+	 */
+	private Node<T> merge(Node<T> left, Node<T> right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		} else {
+			right.left = merge(left, right.left);
+			right.update();
+			return right;
+		}
+	}
+}
@@ -13,15 +13,11 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.Set;
-import java.util.TreeMap;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ReadOnlyDoubleProperty;
-import javafx.beans.property.ReadOnlyLongProperty;
-import javafx.beans.property.ReadOnlyLongWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ObservableValue;
@@ -53,13 +49,9 @@ public class TimeSegmentGraphicsManager {
 	 */
 	private Map<TimeSegmentAdapter, TimeSegmentGraphics> timeSegmentGraphics = new HashMap<>();
 	/**
-	 * Size of bins which are used for quick access to time segments
+	 * Index of TimeSegmentGraphics locations for quick access to time segments
 	 */
-	private ReadOnlyLongWrapper timeSegmentGraphicsBinsize = new ReadOnlyLongWrapper();
-	/**
-	 * TimeSegmentGraphics grouped into bins for quick access
-	 */
-	private final NavigableMap<Long, Set<TimeSegmentGraphics>> timeSegmentGraphicsLocations = new TreeMap<>();
+	private final IntervalIndex<TimeSegmentGraphics> timeSegmentGraphicsLocations = new IntervalIndex<>();
 	/**
 	 * Currently visible time segments
 	 */
@@ -124,7 +116,6 @@ public class TimeSegmentGraphicsManager {
 		this.layoutPos.bind(layoutPos);
 		this.visibleProperty.bind(visibleProperty);
 
-		timeSegmentGraphicsBinsize.bind(new SimpleDoubleProperty(1).divide(scale).multiply(graphicsNode.widthProperty()));
 		selectedTimeSegments.addListener(selectedTimeSegmentsListener);
 	}
 
@@ -141,7 +132,7 @@ public class TimeSegmentGraphicsManager {
 	}
 
 	/**
-	 * Removes a specific TimeSegment from the location bins
+	 * Removes a specific TimeSegment from the location index
 	 *
 	 * @param timeSegment the TimeSegment to remove
 	 */
@@ -149,99 +140,48 @@ public class TimeSegmentGraphicsManager {
 		TimeSegmentGraphics graphics = timeSegmentGraphics.remove(timeSegment);
 		if (graphics != null) {
 			synchronized (this) {
-				for (Map.Entry<Long, Set<TimeSegmentGraphics>> entry : timeSegmentGraphicsLocations.entrySet())
-					entry.getValue().remove(graphics);
+				timeSegmentGraphicsLocations.remove(graphics);
 			}
 			graphics.dispose();
 		}
 	}
 
 	/**
-	 * Adds a TimeSegmentAdapter for display and into location bins
+	 * Adds a TimeSegmentAdapter for display and into location index
 	 *
 	 * @param timeSegment the TimeSegment to add
 	 */
 	public void addTimeSegmentGraphics(TimeSegmentAdapter timeSegment) {
-		long binSize = timeSegmentGraphicsBinsize.get();
-		long startBin = binSize * (timeSegment.startProperty().get().getTime() / binSize);
-		long endBin = binSize * (timeSegment.endProperty().get().getTime() / binSize + 1);
 		TimeSegmentGraphics graphics = new TimeSegmentGraphics(timeSegment, this, mouseHandler);
 		timeSegmentGraphics.put(timeSegment, graphics);
 		synchronized (this) {
-			for (long bin = startBin; bin <= endBin; bin += binSize) {
-				if (!timeSegmentGraphicsLocations.containsKey(bin))
-					timeSegmentGraphicsLocations.put(bin, new HashSet<TimeSegmentGraphics>());
-				timeSegmentGraphicsLocations.get(bin).add(graphics);
-			}
+			timeSegmentGraphicsLocations.put(graphics, timeSegment.startProperty().get(), timeSegment.endProperty().get());
 		}
 	}
 
 	/**
-	 * Updates the graphics for a TimeSegment in location bins
+	 * Updates the graphics for a TimeSegment in location index
 	 *
 	 * @param graphics
 	 */
 	public void updateTimeSegmentGraphics(TimeSegmentGraphics graphics) {
-		long binSize = timeSegmentGraphicsBinsize.get();
-		long startBin = binSize * (graphics.getStartDate().getTime() / binSize);
-		long endBin = binSize * (graphics.getEndDate().getTime() / binSize + 1);
 		synchronized (this) {
-			//Remove from non-matching bins
-			for (Map.Entry<Long, Set<TimeSegmentGraphics>> entry : timeSegmentGraphicsLocations.entrySet())
-				if (entry.getKey() < startBin || entry.getKey() > endBin)
-					entry.getValue().remove(graphics);
-			//Add to any bins we aren't already in
-			for (long bin = startBin; bin <= endBin; bin += binSize) {
-				if (!timeSegmentGraphicsLocations.containsKey(bin))
-					timeSegmentGraphicsLocations.put(bin, new HashSet<TimeSegmentGraphics>());
-				timeSegmentGraphicsLocations.get(bin).add(graphics);
-			}
+			timeSegmentGraphicsLocations.put(graphics, graphics.getStartDate(), graphics.getEndDate());
 		}
 	}
 
-	/**
-	 * Returns the floor of key of a map, or the key itself if there is no floor
-	 *
-	 * @param <K> the map key type
-	 * @param <V> the map value type
-	 * @param map the map
-	 * @param key the key
-	 * @return the floor of key of a map, or the key itself if there is no floor
-	 */
-	private <K, V> K floorKey(NavigableMap<K, V> map, K key) {
-		K floorKey = map.floorKey(key);
-		return floorKey != null ? floorKey : key;
-	}
-
-	/**
-	 * Returns the ceiling of key of a map, or the key itself if there is no
-	 * ceiling
-	 *
-	 * @param <K> the map key type
-	 * @param <V> the map value type
-	 * @param map the map
-	 * @param key the key
-	 * @return the ceiling of key of a map, or the key itself if there is no
-	 * ceiling
-	 */
-	private <K, V> K ceilingKey(NavigableMap<K, V> map, K key) {
-		K ceilingKey = map.ceilingKey(key);
-		return ceilingKey != null ? ceilingKey : key;
-	}
-
 	/**
 	 * Initializes visible TimeSegmentGraphics objects
 	 */
 	public void updateTimeSegmentGraphics() {
-		long startTime = floorKey(timeSegmentGraphicsLocations, coordinatesToTime(graphicsNode.getLayoutX()).getTime());
-		long endTime = ceilingKey(timeSegmentGraphicsLocations, coordinatesToTime(graphicsNode.getLayoutX() + graphicsNode.getWidth()).getTime());
+		Date startTime = coordinatesToTime(graphicsNode.getLayoutX());
+		Date endTime = coordinatesToTime(graphicsNode.getLayoutX() + graphicsNode.getWidth());
 		//Initialize new objects
 		synchronized (this) {
 			List<TimeSegmentGraphics> initGraphics = new LinkedList<>();
-			for (NavigableMap.Entry<Long, Set<TimeSegmentGraphics>> entry : timeSegmentGraphicsLocations.subMap(startTime, true, endTime, true).entrySet())
-				for (TimeSegmentGraphics graphics : entry.getValue())
-					if (!graphics.initialized)
-						initGraphics.add(graphics);
+			for (TimeSegmentGraphics graphics : timeSegmentGraphicsLocations.getOverlapping(startTime, endTime))
+				if (!graphics.initialized)
+					initGraphics.add(graphics);
 			for (TimeSegmentGraphics graphics : initGraphics)
 				graphics.init();
 		}
@@ -269,18 +209,15 @@ public class TimeSegmentGraphicsManager {
 		//Check the current intersections count
 		int currentIntersectionsCount = 0;
 		synchronized (this) {
-			long startTime = floorKey(timeSegmentGraphicsLocations, segmentStartTime.getTime());
-			long endTime = ceilingKey(timeSegmentGraphicsLocations, segmentEndTime.getTime());
-			for (NavigableMap.Entry<Long, Set<TimeSegmentGraphics>> entry : timeSegmentGraphicsLocations.subMap(startTime, true, endTime, true).entrySet())
-				for (TimeSegmentGraphics graphics : entry.getValue())
-					if (graphics != segmentGraphics) {
-						Date start = graphics.getStartDate();
-						Date end = graphics.getEndDate();
-						if (segmentStartTime.before(start) && segmentEndTime.after(start))
-							currentIntersectionsCount++;
-						else if (segmentStartTime.before(end) && segmentEndTime.after(end))
-							currentIntersectionsCount++;
-					}
+			for (TimeSegmentGraphics graphics : timeSegmentGraphicsLocations.getOverlapping(segmentStartTime, segmentEndTime))
+				if (graphics != segmentGraphics) {
+					Date start = graphics.getStartDate();
+					Date end = graphics.getEndDate();
+					if (segmentStartTime.before(start) && segmentEndTime.after(start))
+						currentIntersectionsCount++;
+					else if (segmentStartTime.before(end) && segmentEndTime.after(end))
+						currentIntersectionsCount++;
+				}
 		}
 		return currentIntersectionsCount;
 	}
@@ -485,13 +422,4 @@ public class TimeSegmentGraphicsManager {
 	protected DoubleProperty scaleProperty() {
 		return scale;
 	}
-
-	/**
-	 * Returns the size of bins which are used for quick access to time segments
-	 *
-	 * @return the size of bins which are used for quick access to time segments
-	 */
-	public ReadOnlyLongProperty timeSegmentGraphicsBinsizeProperty() {
-		return timeSegmentGraphicsBinsize.getReadOnlyProperty();
-	}
 }
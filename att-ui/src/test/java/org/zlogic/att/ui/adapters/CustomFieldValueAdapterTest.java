@@ -0,0 +1,95 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.adapters;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+import org.zlogic.att.data.CustomField;
+import org.zlogic.att.data.PersistenceHelper;
+import org.zlogic.att.data.TransactedChange;
+
+/**
+ * Tests for the CustomFieldValueAdapter value changes. Uses an in-memory
+ * database.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueAdapterTest {
+
+	/**
+	 * The DataManager being used
+	 */
+	private DataManager dataManager;
+
+	/**
+	 * Creates the DataManager
+	 */
+	@Before
+	public void setUp() {
+		dataManager = DataManagerTest.createDataManager();
+	}
+
+	/**
+	 * Shuts down the DataManager
+	 */
+	@After
+	public void tearDown() {
+		if (dataManager != null)
+			dataManager.shutdown();
+	}
+
+	/**
+	 * Tests that quick consecutive edits update the value usage by their own
+	 * previous values, and that the last value is stored
+	 */
+	@Test
+	public void testConsecutiveEdits() {
+		CustomFieldAdapter customField = dataManager.createCustomField();
+		TaskAdapter task = dataManager.createTask();
+		TaskAdapter otherTask = dataManager.createTask();
+		CustomFieldValueAdapter customFieldValue = new CustomFieldValueAdapter(customField, dataManager);
+		customFieldValue.setTask(task);
+
+		customFieldValue.valueProperty().set("A"); //NOI18N
+		customFieldValue.valueProperty().set("B"); //NOI18N
+		customFieldValue.valueProperty().set("C"); //NOI18N
+		assertEquals("C", task.getCustomField(customField.getCustomField())); //NOI18N
+		assertEquals(Arrays.asList("", "C"), dataManager.getFilteredCustomFieldValues(customField)); //NOI18N
+
+		customFieldValue.setTasks(Arrays.asList(task, otherTask));
+		customFieldValue.valueProperty().set("D"); //NOI18N
+		assertEquals(Arrays.asList("D"), dataManager.getFilteredCustomFieldValues(customField)); //NOI18N
+		assertEquals(Arrays.asList("D"), dataManager.findFilteredCustomFieldValues(customField, "", 10)); //NOI18N
+
+		//Read-only queries wait for the queued changes
+		final PersistenceHelper persistenceHelper = dataManager.getPersistenceHelper();
+		final List<String> storedValues = new LinkedList<>();
+		persistenceHelper.performReadOnlyQuery(new TransactedChange() {
+			private List<Long> taskIds;
+			private CustomField customField;
+
+			public TransactedChange setParameters(List<Long> taskIds, CustomField customField) {
+				this.taskIds = taskIds;
+				this.customField = customField;
+				return this;
+			}
+
+			@Override
+			public void performChange(EntityManager entityManager) {
+				for (Long taskId : taskIds)
+					storedValues.add(persistenceHelper.getTaskFromDatabase(taskId, entityManager).getCustomField(customField));
+			}
+		}.setParameters(Arrays.asList(task.getId(), otherTask.getId()), customField.getCustomField()));
+		assertEquals(Arrays.asList("D", "D"), storedValues); //NOI18N
+	}
+}
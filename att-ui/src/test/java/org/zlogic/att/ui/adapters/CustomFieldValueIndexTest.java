@@ -0,0 +1,113 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.adapters;
+
+import java.util.Arrays;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the CustomFieldValueIndex. Custom fields are created in an
+ * in-memory database.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class CustomFieldValueIndexTest {
+
+	/**
+	 * DataManager used to create custom fields
+	 */
+	private DataManager dataManager;
+	/**
+	 * The first custom field
+	 */
+	private CustomFieldAdapter firstCustomField;
+	/**
+	 * The second custom field
+	 */
+	private CustomFieldAdapter secondCustomField;
+
+	/**
+	 * Creates the custom fields
+	 */
+	@Before
+	public void setUp() {
+		dataManager = DataManagerTest.createDataManager();
+		firstCustomField = dataManager.createCustomField();
+		secondCustomField = dataManager.createCustomField();
+	}
+
+	/**
+	 * Shuts down the DataManager
+	 */
+	@After
+	public void tearDown() {
+		if (dataManager != null)
+			dataManager.shutdown();
+	}
+
+	/**
+	 * Tests that a value is removed only when its last reference is removed,
+	 * and that custom fields don't share values
+	 */
+	@Test
+	public void testReferenceCounting() {
+		CustomFieldValueIndex index = new CustomFieldValueIndex();
+		assertTrue(index.add(firstCustomField, "b")); //NOI18N
+		assertFalse(index.add(firstCustomField, "b")); //NOI18N
+		assertTrue(index.add(firstCustomField, "a")); //NOI18N
+		assertTrue(index.add(secondCustomField, "b")); //NOI18N
+		assertEquals(Arrays.asList("a", "b"), index.getValues(firstCustomField)); //NOI18N
+		assertEquals(Arrays.asList("b"), index.getValues(secondCustomField)); //NOI18N
+
+		assertFalse(index.remove(firstCustomField, "b")); //NOI18N
+		assertTrue(index.contains(firstCustomField, "b")); //NOI18N
+		assertTrue(index.remove(firstCustomField, "b")); //NOI18N
+		assertFalse(index.contains(firstCustomField, "b")); //NOI18N
+		assertFalse(index.remove(firstCustomField, "b")); //NOI18N
+		assertTrue(index.contains(secondCustomField, "b")); //NOI18N
+		assertEquals(Arrays.asList("a"), index.getValues(firstCustomField)); //NOI18N
+
+		index.removeCustomField(secondCustomField);
+		assertFalse(index.contains(secondCustomField, "b")); //NOI18N
+		assertTrue(index.getValues(secondCustomField).isEmpty());
+		assertFalse(index.remove(secondCustomField, "b")); //NOI18N
+
+		index.clear();
+		assertTrue(index.getValues(firstCustomField).isEmpty());
+	}
+
+	/**
+	 * Tests that findByPrefix returns only values starting with the prefix,
+	 * the most used values first, limited to the requested number of values
+	 */
+	@Test
+	public void testFindByPrefix() {
+		CustomFieldValueIndex index = new CustomFieldValueIndex();
+		String[] values = new String[]{"ab", "abc", "abd", "abe", "ac", "b"}; //NOI18N
+		int[] usage = new int[]{2, 5, 1, 5, 9, 7};
+		for (int i = 0; i < values.length; i++)
+			for (int j = 0; j < usage[i]; j++)
+				index.add(firstCustomField, values[i]);
+
+		assertEquals(Arrays.asList("abc", "abe", "ab", "abd"), index.findByPrefix(firstCustomField, "ab", 10)); //NOI18N
+		assertEquals(Arrays.asList("abc", "abe"), index.findByPrefix(firstCustomField, "ab", 2)); //NOI18N
+		assertEquals(Arrays.asList("ac", "b", "abc"), index.findByPrefix(firstCustomField, "", 3)); //NOI18N
+		assertTrue(index.findByPrefix(firstCustomField, "c", 3).isEmpty()); //NOI18N
+		assertTrue(index.findByPrefix(firstCustomField, "ab", 0).isEmpty()); //NOI18N
+		assertTrue(index.findByPrefix(secondCustomField, "ab", 3).isEmpty()); //NOI18N
+
+		//Usage changes are reflected
+		for (int i = 0; i < 5; i++)
+			index.remove(firstCustomField, "abc"); //NOI18N
+		assertEquals(Arrays.asList("abe", "ab", "abd"), index.findByPrefix(firstCustomField, "ab", 10)); //NOI18N
+	}
+}
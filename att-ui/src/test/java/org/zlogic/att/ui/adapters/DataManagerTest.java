@@ -0,0 +1,236 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.adapters;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.zlogic.att.data.FilterTaskCompleted;
+import org.zlogic.att.data.PersistenceHelper;
+import org.zlogic.att.data.Task;
+import org.zlogic.att.data.TimeSegment;
+import org.zlogic.att.data.TransactedChange;
+import org.zlogic.att.ui.filter.FilterHolder;
+
+/**
+ * Tests for the DataManager's filtered tasks and time segments lists. Every
+ * test uses its own in-memory database and doesn't require the Java FX
+ * toolkit.
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class DataManagerTest {
+
+	/**
+	 * Start of the test data time range
+	 */
+	private static final long START_TIME = 1451606400000L;
+	/**
+	 * One hour in milliseconds
+	 */
+	private static final long HOUR = 60 * 60 * 1000L;
+	/**
+	 * Counter used to create a new in-memory database for every DataManager
+	 */
+	private static final AtomicInteger databaseCounter = new AtomicInteger();
+	/**
+	 * The DataManager being tested
+	 */
+	private DataManager dataManager;
+	/**
+	 * Time segment of the completed task
+	 */
+	private TimeSegment completedTaskSegment;
+	/**
+	 * Time segment of the not completed task
+	 */
+	private TimeSegment openTaskSegment;
+	/**
+	 * Time segment of the not completed task, far from the other time
+	 * segments
+	 */
+	private TimeSegment distantTaskSegment;
+
+	/**
+	 * Creates a DataManager using a new, empty in-memory database
+	 *
+	 * @return the DataManager
+	 */
+	protected static DataManager createDataManager() {
+		Map<String, String> properties = new TreeMap<>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:DataManagerTest" + databaseCounter.incrementAndGet() + ";DB_CLOSE_DELAY=-1"); //NOI18N
+		return new DataManager(new PersistenceHelper(properties));
+	}
+
+	/**
+	 * Creates the test data: a completed task, a not completed task and a not
+	 * completed task with a time segment far from the others
+	 */
+	@Before
+	public void setUp() {
+		dataManager = createDataManager();
+		dataManager.getPersistenceHelper().performTransactedChange(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				PersistenceHelper persistenceHelper = dataManager.getPersistenceHelper();
+				Task completedTask = persistenceHelper.createTask(entityManager);
+				completedTask.setName("Completed task"); //NOI18N
+				completedTask.setCompleted(true);
+				completedTaskSegment = persistenceHelper.createTimeSegment(entityManager, completedTask, new Date(START_TIME), new Date(START_TIME + HOUR), "Completed"); //NOI18N
+
+				Task openTask = persistenceHelper.createTask(entityManager);
+				openTask.setName("Open task"); //NOI18N
+				openTask.setCompleted(false);
+				openTaskSegment = persistenceHelper.createTimeSegment(entityManager, openTask, new Date(START_TIME + 2 * HOUR), new Date(START_TIME + 3 * HOUR), "Open"); //NOI18N
+
+				Task distantTask = persistenceHelper.createTask(entityManager);
+				distantTask.setName("Distant task"); //NOI18N
+				distantTask.setCompleted(false);
+				distantTaskSegment = persistenceHelper.createTimeSegment(entityManager, distantTask, new Date(START_TIME + 1000 * HOUR), new Date(START_TIME + 1001 * HOUR), "Distant"); //NOI18N
+
+				FilterTaskCompleted filter = persistenceHelper.createFilterTaskCompleted(entityManager);
+				filter.setTaskCompleted(false);
+			}
+		});
+		dataManager.reloadTasks();
+	}
+
+	/**
+	 * Shuts down the DataManager
+	 */
+	@After
+	public void tearDown() {
+		if (dataManager != null)
+			dataManager.shutdown();
+	}
+
+	/**
+	 * Returns IDs of all time segments in the DataManager's time segments
+	 * list
+	 *
+	 * @return IDs of the listed time segments
+	 */
+	private Set<Long> getTimeSegmentIds() {
+		Set<Long> ids = new TreeSet<>();
+		for (TimeSegmentAdapter timeSegment : dataManager.getTimeSegments())
+			ids.add(timeSegment.getTimeSegment().getId());
+		assertEquals(ids.size(), dataManager.getTimeSegments().size());
+		return ids;
+	}
+
+	/**
+	 * Tests that only time segments in the requested range are loaded, and
+	 * that time segments of tasks which start or stop matching the filters are
+	 * added to or removed from the time segments list
+	 */
+	@Test
+	public void testFilterChangeUpdatesTimeSegments() {
+		assertTrue(getTimeSegmentIds().isEmpty());
+		assertEquals(1, dataManager.getFilters().size());
+		FilterHolder completedFilter = dataManager.getFilters().get(0);
+
+		//Only the not completed task in the range is loaded
+		dataManager.loadTimeSegments(new Date(START_TIME), new Date(START_TIME + 4 * HOUR));
+		Set<Long> ids = getTimeSegmentIds();
+		assertEquals(1, ids.size());
+		assertTrue(ids.contains(openTaskSegment.getId()));
+
+		//Completed task enters the filtered set, and is loaded only now
+		completedFilter.valueProperty().set(true);
+		dataManager.applyFilters();
+		ids = getTimeSegmentIds();
+		assertEquals(1, ids.size());
+		assertTrue(ids.contains(completedTaskSegment.getId()));
+
+		//Previously loaded task enters the filtered set again
+		completedFilter.valueProperty().set(false);
+		dataManager.applyFilters();
+		ids = getTimeSegmentIds();
+		assertEquals(1, ids.size());
+		assertTrue(ids.contains(openTaskSegment.getId()));
+
+		//Both tasks in the range match when the filter is removed
+		dataManager.getFilters().clear();
+		dataManager.applyFilters();
+		ids = getTimeSegmentIds();
+		assertEquals(2, ids.size());
+		assertTrue(ids.contains(completedTaskSegment.getId()));
+		assertTrue(ids.contains(openTaskSegment.getId()));
+
+		//Distant time segment is loaded when its range is requested
+		dataManager.loadTimeSegments(new Date(START_TIME + 1000 * HOUR), new Date(START_TIME + 1002 * HOUR));
+		ids = getTimeSegmentIds();
+		assertEquals(3, ids.size());
+		assertTrue(ids.contains(distantTaskSegment.getId()));
+	}
+
+	/**
+	 * Tests that the task and time segment lookups return the listed adapters
+	 * after tasks are added, deleted and reloaded
+	 */
+	@Test
+	public void testAdapterLookups() {
+		dataManager.loadTimeSegments(new Date(START_TIME), new Date(START_TIME + 4 * HOUR));
+		assertEquals(2, dataManager.getTasks().size());
+		for (TaskAdapter task : dataManager.getTasks())
+			assertSame(task, dataManager.findTaskAdapter(task.getId()));
+		assertNull(dataManager.findTaskAdapter(completedTaskSegment.getOwner().getId()));
+		TimeSegmentAdapter openSegment = dataManager.findTimeSegmentAdapter(openTaskSegment);
+		assertNotNull(openSegment);
+		assertEquals(openTaskSegment.getId(), openSegment.getTimeSegment().getId());
+		assertNull(dataManager.findTimeSegmentAdapter(completedTaskSegment));
+
+		//Added task
+		TaskAdapter newTask = dataManager.createTask();
+		assertSame(newTask, dataManager.findTaskAdapter(newTask.getId()));
+
+		//Task deleted by the DataManager
+		TaskAdapter openTask = dataManager.findTaskAdapter(openTaskSegment.getOwner().getId());
+		dataManager.deleteTask(openTask);
+		assertNull(dataManager.findTaskAdapter(openTask.getId()));
+		assertNull(dataManager.findTimeSegmentAdapter(openTaskSegment));
+
+		//Task deleted directly in the database is forgotten on reload
+		final long distantTaskId = distantTaskSegment.getOwner().getId();
+		final PersistenceHelper persistenceHelper = dataManager.getPersistenceHelper();
+		persistenceHelper.performTransactedChange(new TransactedChange() {
+			@Override
+			public void performChange(EntityManager entityManager) {
+				persistenceHelper.deleteTask(entityManager, entityManager.find(Task.class, distantTaskId));
+			}
+		});
+		dataManager.reloadTasks();
+		assertNull(dataManager.findTaskAdapter(distantTaskId));
+		assertEquals(1, dataManager.getTasks().size());
+		TaskAdapter reloadedTask = dataManager.getTasks().get(0);
+		assertEquals(newTask.getId(), reloadedTask.getId());
+		assertSame(reloadedTask, dataManager.findTaskAdapter(newTask.getId()));
+
+		//Completed task is found after it matches the filters
+		dataManager.getFilters().clear();
+		dataManager.applyFilters();
+		assertEquals(2, dataManager.getTasks().size());
+		TaskAdapter completedTask = dataManager.findTaskAdapter(completedTaskSegment.getOwner().getId());
+		assertNotNull(completedTask);
+		assertTrue(dataManager.getTasks().contains(completedTask));
+		TimeSegmentAdapter completedSegment = dataManager.findTimeSegmentAdapter(completedTaskSegment);
+		assertNotNull(completedSegment);
+		assertTrue(dataManager.getTimeSegments().contains(completedSegment));
+	}
+}
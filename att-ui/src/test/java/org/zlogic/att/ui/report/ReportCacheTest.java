@@ -0,0 +1,132 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.report;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.zlogic.att.data.PersistenceHelper;
+import org.zlogic.att.data.TransactedChange;
+
+/**
+ * Tests for the ReportCache and its invalidation by data changes
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class ReportCacheTest {
+
+	/**
+	 * The report start date
+	 */
+	private static final LocalDate START_DATE = LocalDate.of(2016, 1, 1);
+	/**
+	 * The report end date
+	 */
+	private static final LocalDate END_DATE = LocalDate.of(2016, 1, 31);
+
+	/**
+	 * Tests that reports are returned only for the same dates and data
+	 * version
+	 */
+	@Test
+	public void testGet() {
+		ReportCache reportCache = new ReportCache();
+		JasperPrint jasperPrint = new JasperPrint();
+		assertNull(reportCache.get(START_DATE, END_DATE, 1));
+		reportCache.put(START_DATE, END_DATE, 1, jasperPrint, "report"); //NOI18N
+
+		ReportCache.CachedReport cachedReport = reportCache.get(START_DATE, END_DATE, 1);
+		assertSame(jasperPrint, cachedReport.getJasperPrint());
+		assertEquals("report", cachedReport.getReportHTML()); //NOI18N
+		assertNull(reportCache.get(START_DATE, END_DATE.plusDays(1), 1));
+		assertNull(reportCache.get(START_DATE.minusDays(1), END_DATE, 1));
+		assertNull(reportCache.get(START_DATE, END_DATE, 2));
+	}
+
+	/**
+	 * Tests that reports of older data versions are removed when a report of
+	 * a newer data version is added
+	 */
+	@Test
+	public void testOlderVersionsRemoved() {
+		ReportCache reportCache = new ReportCache();
+		reportCache.put(START_DATE, END_DATE, 1, new JasperPrint(), "old"); //NOI18N
+		reportCache.put(START_DATE.plusDays(1), END_DATE, 2, new JasperPrint(), "new"); //NOI18N
+		assertNull(reportCache.get(START_DATE, END_DATE, 1));
+		assertEquals("new", reportCache.get(START_DATE.plusDays(1), END_DATE, 2).getReportHTML()); //NOI18N
+	}
+
+	/**
+	 * Tests that only the most recently used reports are kept
+	 */
+	@Test
+	public void testLeastRecentlyUsedRemoved() {
+		ReportCache reportCache = new ReportCache();
+		for (int i = 0; i < 4; i++)
+			reportCache.put(START_DATE.plusDays(i), END_DATE, 1, new JasperPrint(), "report " + i); //NOI18N
+		//Use the first report so that the second one is the least recently used
+		assertNotNull(reportCache.get(START_DATE, END_DATE, 1));
+		reportCache.put(START_DATE.plusDays(4), END_DATE, 1, new JasperPrint(), "report 4"); //NOI18N
+		assertNull(reportCache.get(START_DATE.plusDays(1), END_DATE, 1));
+		for (int i : new int[]{0, 2, 3, 4})
+			assertEquals("report " + i, reportCache.get(START_DATE.plusDays(i), END_DATE, 1).getReportHTML()); //NOI18N
+	}
+
+	/**
+	 * Tests that committed changes make cached reports unavailable, that
+	 * queued changes are committed after awaitQueuedChanges, and that
+	 * read-only queries don't
+	 */
+	@Test
+	public void testDataChangeInvalidates() {
+		Map<String, String> properties = new TreeMap<>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:ReportCacheTest;DB_CLOSE_DELAY=-1"); //NOI18N
+		final PersistenceHelper persistenceHelper = new PersistenceHelper(properties);
+		try {
+			ReportCache reportCache = new ReportCache();
+			long dataVersion = persistenceHelper.getDataVersion();
+			reportCache.put(START_DATE, END_DATE, dataVersion, new JasperPrint(), "report"); //NOI18N
+
+			persistenceHelper.performReadOnlyQuery(new TransactedChange() {
+				@Override
+				public void performChange(EntityManager entityManager) {
+					persistenceHelper.getAllTasks(entityManager, false);
+				}
+			});
+			assertNotNull(reportCache.get(START_DATE, END_DATE, persistenceHelper.getDataVersion()));
+
+			persistenceHelper.performTransactedChange(new TransactedChange() {
+				@Override
+				public void performChange(EntityManager entityManager) {
+					persistenceHelper.createTask(entityManager).setName("Task"); //NOI18N
+				}
+			});
+			assertTrue(persistenceHelper.getDataVersion() > dataVersion);
+			assertNull(reportCache.get(START_DATE, END_DATE, persistenceHelper.getDataVersion()));
+			dataVersion = persistenceHelper.getDataVersion();
+
+			persistenceHelper.performTransactedChangeAsync(new TransactedChange() {
+				@Override
+				public void performChange(EntityManager entityManager) {
+					persistenceHelper.createTask(entityManager).setName("Async task"); //NOI18N
+				}
+			});
+			persistenceHelper.awaitQueuedChanges();
+			assertTrue(persistenceHelper.getDataVersion() > dataVersion);
+		} finally {
+			persistenceHelper.shutdown();
+		}
+	}
+}
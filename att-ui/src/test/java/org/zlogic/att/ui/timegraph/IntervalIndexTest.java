@@ -0,0 +1,113 @@
+/*
+ * Awesome Time Tracker project.
+ * Licensed under Apache 2.0 License: http://www.apache.org/licenses/LICENSE-2.0
+ * Author: Dmitry Zolotukhin <zlogic@gmail.com>
+ */
+package org.zlogic.att.ui.timegraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests for the IntervalIndex overlap queries
+ *
+ * @author Dmitry Zolotukhin <a
+ * href="mailto:zlogic@gmail.com">zlogic@gmail.com</a>
+ */
+public class IntervalIndexTest {
+
+	/**
+	 * Tests that only intervals strictly overlapping the range are returned,
+	 * ordered by start time
+	 */
+	@Test
+	public void testGetOverlapping() {
+		IntervalIndex<String> index = new IntervalIndex<>();
+		index.put("a", new Date(10), new Date(20)); //NOI18N
+		index.put("b", new Date(0), new Date(5)); //NOI18N
+		index.put("c", new Date(15), new Date(40)); //NOI18N
+		index.put("d", new Date(30), new Date(35)); //NOI18N
+
+		assertEquals(Arrays.asList("a", "c"), index.getOverlapping(new Date(12), new Date(30))); //NOI18N
+		assertEquals(Arrays.asList("b", "a", "c", "d"), index.getOverlapping(new Date(0), new Date(100))); //NOI18N
+		//Touching intervals don't overlap
+		assertEquals(Arrays.asList("c"), index.getOverlapping(new Date(35), new Date(50))); //NOI18N
+		assertEquals(Arrays.asList("b"), index.getOverlapping(new Date(-10), new Date(10))); //NOI18N
+		assertTrue(index.getOverlapping(new Date(40), new Date(50)).isEmpty());
+		assertTrue(index.getOverlapping(new Date(5), new Date(10)).isEmpty());
+	}
+
+	/**
+	 * Tests updating and removing items, including items with equal start
+	 * times
+	 */
+	@Test
+	public void testPutRemove() {
+		IntervalIndex<String> index = new IntervalIndex<>();
+		index.put("a", new Date(10), new Date(20)); //NOI18N
+		index.put("b", new Date(10), new Date(30)); //NOI18N
+		index.put("c", new Date(10), new Date(15)); //NOI18N
+		assertEquals(3, index.getOverlapping(new Date(12), new Date(13)).size());
+
+		//Updating an item moves it
+		index.put("b", new Date(50), new Date(60)); //NOI18N
+		assertEquals(Arrays.asList("a"), index.getOverlapping(new Date(16), new Date(45))); //NOI18N
+		assertEquals(Arrays.asList("b"), index.getOverlapping(new Date(20), new Date(55))); //NOI18N
+
+		assertTrue(index.remove("a")); //NOI18N
+		assertFalse(index.remove("a")); //NOI18N
+		assertEquals(Arrays.asList("c"), index.getOverlapping(new Date(0), new Date(20))); //NOI18N
+
+		index.clear();
+		assertFalse(index.remove("c")); //NOI18N
+		assertTrue(index.getOverlapping(new Date(0), new Date(100)).isEmpty());
+	}
+
+	/**
+	 * Compares overlap queries with a linear scan after random changes
+	 */
+	@Test
+	public void testRandomChanges() {
+		Random random = new Random(1);
+		IntervalIndex<Integer> index = new IntervalIndex<>();
+		Map<Integer, long[]> intervals = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			int item = random.nextInt(500);
+			if (random.nextInt(4) == 0) {
+				assertEquals(intervals.remove(item) != null, index.remove(item));
+			} else {
+				long start = random.nextInt(10000);
+				long end = start + random.nextInt(200);
+				intervals.put(item, new long[]{start, end});
+				index.put(item, new Date(start), new Date(end));
+			}
+			if (i % 50 == 0) {
+				long rangeStart = random.nextInt(10000);
+				long rangeEnd = rangeStart + random.nextInt(1000);
+				Set<Integer> expected = new HashSet<>();
+				for (Map.Entry<Integer, long[]> entry : intervals.entrySet())
+					if (entry.getValue()[0] < rangeEnd && entry.getValue()[1] > rangeStart)
+						expected.add(entry.getKey());
+				List<Integer> found = index.getOverlapping(new Date(rangeStart), new Date(rangeEnd));
+				assertEquals(expected, new HashSet<>(found));
+				assertEquals(expected.size(), found.size());
+				List<Long> foundStarts = new ArrayList<>();
+				for (Integer foundItem : found)
+					foundStarts.add(intervals.get(foundItem)[0]);
+				for (int j = 1; j < foundStarts.size(); j++)
+					assertTrue(foundStarts.get(j - 1) <= foundStarts.get(j));
+			}
+		}
+	}
+}